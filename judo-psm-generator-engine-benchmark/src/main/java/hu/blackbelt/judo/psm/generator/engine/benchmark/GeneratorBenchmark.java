@@ -0,0 +1,156 @@
+package hu.blackbelt.judo.psm.generator.engine.benchmark;
+
+import com.github.jknack.handlebars.Context;
+import com.github.jknack.handlebars.ValueResolver;
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.judo.generator.commons.TemplateHelperFinder;
+import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
+import hu.blackbelt.judo.meta.psm.namespace.Model;
+import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
+import hu.blackbelt.judo.psm.generator.engine.*;
+import hu.blackbelt.model.northwind.Demo;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static hu.blackbelt.judo.psm.generator.engine.PsmGenerator.*;
+
+/**
+ * Benchmarks of the generator engine phases with the northwind demo model and the override1 / override2 template
+ * sets of engine tests. The templates are copied to target/templates by the build, the location can be changed
+ * with the benchmark.templates system property.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneratorBenchmark {
+
+    public static final String OVERRIDE_1 = "override1";
+    public static final String OVERRIDE_2 = "override2";
+    public static final String DESCRIPTOR_NAME = "test-project";
+    public static final String RENDERED_TEMPLATE = "actorname";
+
+    PsmModel psmModel;
+    LinkedHashMap<String, URI> uris;
+    Collection<Class> helpers;
+    PsmGeneratorContext generatorContext;
+    GeneratorTemplate renderedTemplate;
+    GeneratorTemplate factoryTemplate;
+    TemplateEvaluator renderedTemplateEvaluator;
+    TemplateEvaluator factoryTemplateEvaluator;
+    StandardEvaluationContext actorEvaluationContext;
+    Map<String, Object> runParameters;
+    Set<ActorType> actorTypes;
+    ActorType actorType;
+
+    @Setup
+    public void setUp() throws IOException {
+        psmModel = new Demo().fullDemo();
+        File templates = new File(System.getProperty("benchmark.templates", "target/templates"));
+        uris = new LinkedHashMap<>();
+        uris.put(OVERRIDE_1, new File(templates, OVERRIDE_1).toURI());
+        uris.put(OVERRIDE_2, new File(templates, OVERRIDE_2).toURI());
+        helpers = TemplateHelperFinder.collectHelpersAsClass(GeneratorBenchmark.class.getClassLoader());
+        generatorContext = createGeneratorContext();
+
+        actorTypes = generatorContext.getModelResourceSupport().getStreamOfPsmAccesspointActorType().collect(Collectors.toSet());
+        actorType = actorTypes.stream().min(Comparator.comparing(ActorType::getName))
+                .orElseThrow(() -> new IllegalStateException("No actor type in model"));
+        Model model = generatorContext.getModelResourceSupport().getStreamOfPsmNamespaceModel().findFirst()
+                .orElseThrow(() -> new IllegalStateException("No model"));
+
+        renderedTemplate = generatorContext.getGeneratorModel().getTemplates().stream()
+                .filter(t -> RENDERED_TEMPLATE.equals(t.getName())).findFirst()
+                .orElseThrow(() -> new IllegalStateException("No template: " + RENDERED_TEMPLATE));
+        factoryTemplate = GeneratorTemplate.generatorTemplateBuilder()
+                .name("factory")
+                .factoryExpression("#actorTypes")
+                .pathExpression("#self.name + '/factory'")
+                .template("{{ self.name }}")
+                .build();
+
+        actorEvaluationContext = generatorContext.createSpringEvaluationContext();
+        actorEvaluationContext.setVariable(ACTOR_TYPES, actorTypes);
+        actorEvaluationContext.setVariable(MODEL, model);
+        actorEvaluationContext.setVariable(ACTOR_TYPE, actorType);
+        actorEvaluationContext.setVariable(SELF, actorType);
+        actorEvaluationContext.setVariable("extra", "extra");
+
+        renderedTemplateEvaluator = new TemplateEvaluator(generatorContext, renderedTemplate, actorEvaluationContext);
+        factoryTemplateEvaluator = new TemplateEvaluator(generatorContext, factoryTemplate, actorEvaluationContext);
+
+        runParameters = new HashMap<>();
+        runParameters.put(ADD_DEBUG_TO_TEMPLATE, CLIENT_TEMPLATE_DEBUG);
+        runParameters.put(ACTOR_TYPES, actorTypes);
+        runParameters.put(MODEL, model);
+        runParameters.put("extra", "extra");
+    }
+
+    PsmGeneratorContext createGeneratorContext() throws IOException {
+        return PsmGenerator.createGeneratorContext(PsmGenerator.CreateGeneratorContextArgument.builder()
+                .psmModel(psmModel)
+                .descriptorName(DESCRIPTOR_NAME)
+                .uris(uris)
+                .helpers(helpers)
+                .build());
+    }
+
+    @Benchmark
+    public PsmGeneratorContext generatorContext() throws IOException {
+        return createGeneratorContext();
+    }
+
+    @Benchmark
+    public TemplateEvaluator templateEvaluator() throws IOException {
+        return new TemplateEvaluator(generatorContext, renderedTemplate, generatorContext.createSpringEvaluationContext());
+    }
+
+    @Benchmark
+    public String pathExpression() {
+        return renderedTemplateEvaluator.evaluate(renderedTemplateEvaluator.getPathExpression(), actorEvaluationContext, String.class);
+    }
+
+    @Benchmark
+    public Collection factoryExpression() {
+        return factoryTemplateEvaluator.getFactoryExpressionResultOrValue(factoryTemplate, actorType, Collection.class);
+    }
+
+    @Benchmark
+    public String render() throws IOException {
+        Map<String, Object> params = new HashMap<>(4);
+        params.put(TEMPLATE, renderedTemplate);
+        params.put(SELF, actorType);
+        Context context = Context.newBuilder(new LayeredMap(params, runParameters))
+                .combine(ACTOR_TYPE, actorType)
+                .push(generatorContext.getValueResolvers().toArray(ValueResolver[]::new))
+                .build();
+        return renderedTemplateEvaluator.getTemplate().apply(context);
+    }
+
+    @State(Scope.Benchmark)
+    public static class ExecutorState {
+        @Param({"COMMON_POOL", "CALLER_RUNS"})
+        public GeneratorExecutor.Mode executorMode;
+    }
+
+    @Benchmark
+    public void execute(ExecutorState executorState, Blackhole blackhole) throws Exception {
+        PsmGenerator.execute(PsmGeneratorParameter.psmGeneratorParameter()
+                .generatorContext(generatorContext)
+                .targetDirectoryResolver(() -> new File("target/benchmark-output"))
+                .actorTypeTargetDirectoryResolver(a -> new File("target/benchmark-output"))
+                .extraContextVariables(() -> ImmutableMap.of("extra", "extra"))
+                .executorMode(executorState.executorMode)
+                .generatedFileSink((a, f) -> blackhole.consume(f)));
+    }
+}
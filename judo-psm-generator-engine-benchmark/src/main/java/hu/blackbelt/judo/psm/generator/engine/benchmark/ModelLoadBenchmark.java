@@ -0,0 +1,65 @@
+package hu.blackbelt.judo.psm.generator.engine.benchmark;
+
+import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
+import hu.blackbelt.judo.psm.generator.engine.PsmModelCache;
+import org.eclipse.emf.common.util.URI;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.LoadArguments.psmLoadArgumentsBuilder;
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.SaveArguments.psmSaveArgumentsBuilder;
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.buildPsmModel;
+
+/**
+ * Compares the load time of the XMI and the EMF binary ({@link PsmModelCache}) format of the northwind demo model
+ * and synthetic models scaled by {@link SyntheticPsmModel}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ModelLoadBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    File xmiFile;
+    File binaryFile;
+
+    @Setup
+    public void setUp() throws Exception {
+        File directory = Files.createTempDirectory("psm-model-load").toFile();
+        xmiFile = new File(directory, "model.psm");
+        binaryFile = new File(directory, "model" + PsmModelCache.CACHE_FILE_EXTENSION);
+        PsmModel psmModel = SyntheticPsmModel.syntheticPsmModel().scale(scale).build().build();
+        psmModel.savePsmModel(psmSaveArgumentsBuilder().file(xmiFile).validateModel(false));
+        PsmModelCache.save(psmModel.getResource(), binaryFile);
+    }
+
+    @TearDown
+    public void tearDown() {
+        xmiFile.delete();
+        binaryFile.delete();
+        xmiFile.getParentFile().delete();
+    }
+
+    @Benchmark
+    public PsmModel loadXmi() throws Exception {
+        return PsmModel.loadPsmModel(psmLoadArgumentsBuilder()
+                .file(xmiFile)
+                .validateModel(false)
+                .name("benchmark"));
+    }
+
+    @Benchmark
+    public PsmModel loadBinary() throws Exception {
+        PsmModel psmModel = buildPsmModel().name("benchmark").uri(URI.createFileURI(xmiFile.getAbsolutePath())).build();
+        PsmModelCache.load(psmModel.getResource(), binaryFile);
+        return psmModel;
+    }
+}
@@ -0,0 +1,103 @@
+package hu.blackbelt.judo.psm.generator.engine.benchmark;
+
+import com.google.common.collect.ImmutableMap;
+import hu.blackbelt.judo.generator.commons.TemplateHelperFinder;
+import hu.blackbelt.judo.psm.generator.engine.GeneratorExecutor;
+import hu.blackbelt.judo.psm.generator.engine.PsmGenerator;
+import hu.blackbelt.judo.psm.generator.engine.PsmGeneratorContext;
+import hu.blackbelt.judo.psm.generator.engine.PsmGeneratorParameter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.net.URI;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.judo.psm.generator.engine.benchmark.GeneratorBenchmark.*;
+
+/**
+ * Measures how the time of {@link PsmGenerator#execute} grows with the size of the model. The models are
+ * created by {@link SyntheticPsmModel} with the given scale, counts and depth, the peak heap usage of every iteration is printed
+ * after the iteration.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class ScalingBenchmark {
+
+    @Param({"1", "10", "100"})
+    public int scale;
+
+    @Param({"0"})
+    public int entityCount;
+
+    @Param({"0"})
+    public int actorCount;
+
+    @Param({"0"})
+    public int accessPointDepth;
+
+    @Param({"1"})
+    public int attributeFanOut;
+
+    @Param({"1"})
+    public int relationFanOut;
+
+    PsmGeneratorContext generatorContext;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        File templates = new File(System.getProperty("benchmark.templates", "target/templates"));
+        LinkedHashMap<String, URI> uris = new LinkedHashMap<>();
+        uris.put(OVERRIDE_1, new File(templates, OVERRIDE_1).toURI());
+        uris.put(OVERRIDE_2, new File(templates, OVERRIDE_2).toURI());
+        generatorContext = PsmGenerator.createGeneratorContext(PsmGenerator.CreateGeneratorContextArgument.builder()
+                .psmModel(SyntheticPsmModel.syntheticPsmModel()
+                        .scale(scale)
+                        .entityCount(entityCount)
+                        .actorCount(actorCount)
+                        .accessPointDepth(accessPointDepth)
+                        .attributeFanOut(attributeFanOut)
+                        .relationFanOut(relationFanOut)
+                        .build().build())
+                .descriptorName(DESCRIPTOR_NAME)
+                .uris(uris)
+                .helpers(TemplateHelperFinder.collectHelpersAsClass(ScalingBenchmark.class.getClassLoader()))
+                .build());
+    }
+
+    @Setup(Level.Iteration)
+    public void resetPeakHeap() {
+        System.gc();
+        ManagementFactory.getMemoryPoolMXBeans().forEach(MemoryPoolMXBean::resetPeakUsage);
+    }
+
+    @TearDown(Level.Iteration)
+    public void printPeakHeap() {
+        long peak = ManagementFactory.getMemoryPoolMXBeans().stream()
+                .filter(p -> p.getType() == MemoryType.HEAP)
+                .mapToLong(p -> p.getPeakUsage().getUsed())
+                .sum();
+        System.out.println(String.format(Locale.ROOT, "scale: %d, peak heap: %d MB", scale, peak / (1024 * 1024)));
+    }
+
+    @Benchmark
+    public void execute(Blackhole blackhole) throws Exception {
+        PsmGenerator.execute(PsmGeneratorParameter.psmGeneratorParameter()
+                .generatorContext(generatorContext)
+                .targetDirectoryResolver(() -> new File("target/benchmark-output"))
+                .actorTypeTargetDirectoryResolver(a -> new File("target/benchmark-output"))
+                .extraContextVariables(() -> ImmutableMap.of("extra", "extra"))
+                .executorMode(GeneratorExecutor.Mode.COMMON_POOL)
+                .generatedFileSink((a, f) -> blackhole.consume(f)));
+    }
+}
@@ -0,0 +1,255 @@
+package hu.blackbelt.judo.psm.generator.engine.benchmark;
+
+import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
+import hu.blackbelt.model.northwind.Demo;
+import lombok.Builder;
+import org.eclipse.emf.common.util.EList;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Creates deterministic PSM models larger than the northwind demo for load testing.
+ * The northwind demo model is used as a seed: its packages and elements (entity types, actor types, transfer objects,
+ * access points, ...) are copied with a numeric name suffix, so the cross references of the copies are pointing to the
+ * copied elements. The number of entity types and actor types, the depth of the access points and the attributes and
+ * relations of the entity types can be set independently of the scale too.
+ * The elements are created by EMF reflection, so the model is valid as far as the seed model is valid, but
+ * the elements added by the counts, depth and fan outs are copies of one element of the seed: their cross references
+ * (the partner of a relation, the entity type of a mapped transfer object, the binding of a relation) are pointing to
+ * the original elements.
+ */
+@Builder(builderMethodName = "syntheticPsmModel")
+public final class SyntheticPsmModel {
+
+    static final String NAME = "name";
+    static final String PACKAGES = "packages";
+    static final String ELEMENTS = "elements";
+    static final String ATTRIBUTES = "attributes";
+    static final String RELATIONS = "relations";
+    static final String ENTITY_TYPE = "EntityType";
+    static final String ACTOR_TYPE = "ActorType";
+
+    /**
+     * Number of the copies of the demo model content. 1 means the demo model itself.
+     */
+    @Builder.Default
+    int scale = 1;
+
+    /**
+     * Number of entity types. The missing ones are copies of the entity types of the scaled model in model order,
+     * 0 keeps the entity types of the scaled model. It can not be less than the number of the scaled model.
+     */
+    @Builder.Default
+    int entityCount = 0;
+
+    /**
+     * Number of actor types. The missing ones are copies of the actor types of the scaled model in model order, they
+     * share the access point of the copied actor type. 0 keeps the actor types of the scaled model. It can not be less
+     * than the number of the scaled model.
+     */
+    @Builder.Default
+    int actorCount = 0;
+
+    /**
+     * Number of relations of the chain added to the access point of every actor type. The chain is built from
+     * copies of the first relation of the access point and of its target transfer object, 0 keeps the access points
+     * of the demo model.
+     */
+    @Builder.Default
+    int accessPointDepth = 0;
+
+    /**
+     * Number of attributes of entity types for every attribute of the demo model.
+     */
+    @Builder.Default
+    int attributeFanOut = 1;
+
+    /**
+     * Number of relations of entity types for every relation of the demo model.
+     */
+    @Builder.Default
+    int relationFanOut = 1;
+
+    public PsmModel build() {
+        PsmModel psmModel = new Demo().fullDemo();
+        Resource resource = psmModel.getResourceSet().getResources().get(0);
+        EObject model = resource.getContents().get(0);
+
+        List<EObject> packages = new ArrayList<>(getList(model, PACKAGES));
+        List<EObject> elements = new ArrayList<>(getList(model, ELEMENTS));
+        for (int copy = 1; copy < scale; copy++) {
+            List<EObject> originals = new ArrayList<>(packages);
+            originals.addAll(elements);
+            EcoreUtil.Copier copier = new EcoreUtil.Copier();
+            copier.copyAll(originals);
+            copier.copyReferences();
+            for (EObject original : originals) {
+                EObject copied = copier.get(original);
+                addSuffix(copied, "_" + copy);
+                getList(model, packages.contains(original) ? PACKAGES : ELEMENTS).add(copied);
+            }
+        }
+
+        addCopies(resource, ENTITY_TYPE, entityCount);
+        addCopies(resource, ACTOR_TYPE, actorCount);
+        if (accessPointDepth > 0) {
+            Set<EObject> accessPoints = Collections.newSetFromMap(new IdentityHashMap<>());
+            for (EObject actorType : getAll(resource, ACTOR_TYPE)) {
+                EObject accessPoint = getAccessPoint(actorType);
+                if (accessPoint != null && accessPoints.add(accessPoint)) {
+                    addAccessPointChain(accessPoint, accessPointDepth);
+                }
+            }
+        }
+
+        for (EObject element : getAll(resource, null)) {
+            fanOut(element, ATTRIBUTES, attributeFanOut);
+            fanOut(element, RELATIONS, relationFanOut);
+        }
+        return psmModel;
+    }
+
+    /**
+     * Returns the elements of the resource which EClass or one of its super types has the given name, all of the
+     * elements when the name is null.
+     */
+    private static List<EObject> getAll(Resource resource, String eClassName) {
+        List<EObject> all = new ArrayList<>();
+        TreeIterator<EObject> iterator = resource.getAllContents();
+        while (iterator.hasNext()) {
+            EObject element = iterator.next();
+            if (eClassName == null || isA(element, eClassName)) {
+                all.add(element);
+            }
+        }
+        return all;
+    }
+
+    private static boolean isA(EObject element, String eClassName) {
+        return eClassName.equals(element.eClass().getName())
+                || element.eClass().getEAllSuperTypes().stream().anyMatch(t -> eClassName.equals(t.getName()));
+    }
+
+    /**
+     * Adds copies of the elements of the given EClass name next to the originals until there are count of them.
+     */
+    private static void addCopies(Resource resource, String eClassName, int count) {
+        if (count <= 0) {
+            return;
+        }
+        List<EObject> originals = getAll(resource, eClassName);
+        if (originals.size() > count) {
+            throw new IllegalArgumentException("The scaled model has " + originals.size() + " " + eClassName
+                    + " elements, it is more than " + count);
+        }
+        if (originals.isEmpty()) {
+            throw new IllegalStateException("No " + eClassName + " in the seed model");
+        }
+        for (int i = originals.size(); i < count; i++) {
+            EObject original = originals.get(i % originals.size());
+            EObject copied = EcoreUtil.copy(original);
+            addSuffix(copied, "_" + eClassName.toLowerCase() + i);
+            getContainingList(original).add(copied);
+        }
+    }
+
+    /**
+     * Returns the access point of the actor type: the first transfer object (an element having relations, which is not
+     * an entity type) referenced by it, or null when there is no such reference.
+     */
+    private static EObject getAccessPoint(EObject actorType) {
+        return actorType.eClass().getEAllReferences().stream()
+                .filter(r -> !r.isContainment() && !r.isContainer() && !r.isMany())
+                .map(r -> (EObject) actorType.eGet(r))
+                .filter(t -> t != null && isTransferObject(t))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Adds a chain of depth relations to the access point. The transfer objects of the chain are copies of the
+     * target of the first relation of the access point, the relations are copies of that relation.
+     */
+    private static void addAccessPointChain(EObject accessPoint, int depth) {
+        for (EObject relation : getList(accessPoint, RELATIONS)) {
+            List<EReference> targetReferences = relation.eClass().getEAllReferences().stream()
+                    .filter(r -> !r.isContainment() && !r.isContainer() && !r.isMany())
+                    .filter(r -> relation.eGet(r) instanceof EObject && isTransferObject((EObject) relation.eGet(r)))
+                    .collect(Collectors.toList());
+            if (targetReferences.isEmpty()) {
+                continue;
+            }
+            EReference targetReference = targetReferences.get(0);
+            EObject target = (EObject) relation.eGet(targetReference);
+            EObject level = accessPoint;
+            for (int i = 1; i <= depth; i++) {
+                EObject next = EcoreUtil.copy(target);
+                addSuffix(next, "_depth" + i);
+                getContainingList(target).add(next);
+                EObject link = EcoreUtil.copy(relation);
+                addSuffix(link, "_depth" + i);
+                link.eSet(targetReference, next);
+                getList(level, RELATIONS).add(link);
+                level = next;
+            }
+            return;
+        }
+    }
+
+    private static boolean isTransferObject(EObject element) {
+        EStructuralFeature relations = element.eClass().getEStructuralFeature(RELATIONS);
+        return !isA(element, ENTITY_TYPE) && relations != null && relations.isMany() && element.eContainmentFeature() != null
+                && element.eContainmentFeature().isMany();
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EList<EObject> getContainingList(EObject element) {
+        if (element.eContainmentFeature() == null || !element.eContainmentFeature().isMany()) {
+            throw new IllegalStateException("No containing list of " + element.eClass().getName());
+        }
+        return (EList<EObject>) element.eContainer().eGet(element.eContainmentFeature());
+    }
+
+    private static void fanOut(EObject element, String featureName, int fanOut) {
+        EStructuralFeature feature = element.eClass().getEStructuralFeature(featureName);
+        if (fanOut <= 1 || feature == null || !feature.isMany()) {
+            return;
+        }
+        EList<EObject> features = getList(element, featureName);
+        List<EObject> originals = new ArrayList<>(features);
+        for (int copy = 1; copy < fanOut; copy++) {
+            for (EObject original : originals) {
+                EObject copied = EcoreUtil.copy(original);
+                addSuffix(copied, "_" + copy);
+                features.add(copied);
+            }
+        }
+    }
+
+    private static void addSuffix(EObject element, String suffix) {
+        EStructuralFeature name = element.eClass().getEStructuralFeature(NAME);
+        if (name != null && element.eGet(name) != null) {
+            element.eSet(name, element.eGet(name) + suffix);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static EList<EObject> getList(EObject element, String featureName) {
+        EStructuralFeature feature = element.eClass().getEStructuralFeature(featureName);
+        if (feature == null || !feature.isMany()) {
+            throw new IllegalStateException("No " + featureName + " in " + element.eClass().getName());
+        }
+        return (EList<EObject>) element.eGet(feature);
+    }
+}
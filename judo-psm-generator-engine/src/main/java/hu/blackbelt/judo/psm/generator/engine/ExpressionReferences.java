@@ -0,0 +1,72 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import lombok.Getter;
+import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelNode;
+import org.springframework.expression.spel.ast.*;
+import org.springframework.expression.spel.standard.SpelExpression;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * The variables and the root object referenced by a SpringEL expression, determined from its AST.
+ * The root object is referenced by the property, method and indexer nodes starting a chain (for example `name` or
+ * `[0]`) outside of projections and selections, by `#root` and by `#this` outside of projections and selections.
+ * When the AST is not available, the expression is handled as it references the root object.
+ */
+@Getter
+final class ExpressionReferences {
+
+    private final boolean root;
+
+    private final Set<String> variables;
+
+    private ExpressionReferences(boolean root, Set<String> variables) {
+        this.root = root;
+        this.variables = Collections.unmodifiableSet(variables);
+    }
+
+    static ExpressionReferences of(Expression expression) {
+        if (!(expression instanceof SpelExpression)) {
+            return new ExpressionReferences(true, Collections.emptySet());
+        }
+        Collector collector = new Collector();
+        collector.visit(((SpelExpression) expression).getAST(), true, false);
+        return new ExpressionReferences(collector.root, collector.variables);
+    }
+
+    private static final class Collector {
+        private boolean root;
+        private final Set<String> variables = new HashSet<>();
+
+        /**
+         * @param start    the node is evaluated on the active context object instead of the value of the previous node
+         * @param iterated the node is evaluated inside of a projection or selection, where the active context object
+         *                 is the iterated element
+         */
+        private void visit(SpelNode node, boolean start, boolean iterated) {
+            if (node instanceof VariableReference) {
+                String name = node.toStringAST().substring(1);
+                variables.add(name);
+                if ("root".equals(name) || "this".equals(name) && !iterated) {
+                    root = true;
+                }
+                return;
+            }
+            if (node instanceof TypeReference) {
+                return;
+            }
+            if (start && !iterated && (node instanceof PropertyOrFieldReference || node instanceof MethodReference
+                    || node instanceof Indexer || node instanceof Projection || node instanceof Selection)) {
+                root = true;
+            }
+            boolean body = node instanceof Projection || node instanceof Selection;
+            for (int i = 0; i < node.getChildCount(); i++) {
+                boolean childStart = !(node instanceof CompoundExpression) || i == 0;
+                visit(node.getChild(i), childStart, iterated || body);
+            }
+        }
+    }
+}
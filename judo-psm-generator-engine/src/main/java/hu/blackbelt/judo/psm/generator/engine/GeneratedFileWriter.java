@@ -0,0 +1,229 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.google.common.hash.Hashing;
+import hu.blackbelt.epsilon.runtime.execution.api.Log;
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
+import hu.blackbelt.judo.generator.commons.GeneratorIgnore;
+import lombok.Getter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Writes generated files into target directories. It is thread safe, so it can be used from the render threads.
+ * When writeIfChanged is set, a {@link GenerationManifest} is maintained for every target directory and the files
+ * which content hash is same as the previously written one and which are not modified since are not touched,
+ * so their modification time is kept. The manifests are saved on {@link #close()}.
+ * Generations writing into the same target directory at the same time have to share the manifests, see
+ * {@link #GeneratedFileWriter(GeneratedFileWriter, Log, GenerationListener)}.
+ */
+public class GeneratedFileWriter implements AutoCloseable {
+
+    private final boolean writeIfChanged;
+
+    private final File manifestDirectory;
+
+    private final Log log;
+
+    private final Map<Path, GeneratorIgnore> generatorIgnores;
+
+    private final Map<Path, GenerationManifest> manifests;
+
+    /**
+     * Directories created or checked by this writer, so the directory of every file is created only once.
+     */
+    private final Set<Path> directories;
+
+    /**
+     * The manifests are saved by the writer which created them.
+     */
+    private final boolean manifestOwner;
+
+    @Getter
+    private final Statistics statistics = new Statistics();
+
+    private final GenerationListener listener;
+
+    public GeneratedFileWriter(boolean writeIfChanged, Log log) {
+        this(writeIfChanged, log, GenerationListener.NONE);
+    }
+
+    public GeneratedFileWriter(boolean writeIfChanged, Log log, GenerationListener listener) {
+        this(writeIfChanged, null, log, listener);
+    }
+
+    /**
+     * @param manifestDirectory directory of the manifests, when it is null the manifest is stored in the target directory
+     */
+    public GeneratedFileWriter(boolean writeIfChanged, File manifestDirectory, Log log, GenerationListener listener) {
+        this.writeIfChanged = writeIfChanged;
+        this.manifestDirectory = manifestDirectory;
+        this.log = log;
+        this.listener = listener != null ? listener : GenerationListener.NONE;
+        this.generatorIgnores = new ConcurrentHashMap<>();
+        this.manifests = new ConcurrentHashMap<>();
+        this.directories = ConcurrentHashMap.newKeySet();
+        this.manifestOwner = true;
+    }
+
+    /**
+     * Creates a writer sharing the manifests of the given writer, so more generations can write into the same target
+     * directory at the same time and the manifest contains the files of all of them. The writer has its own statistics
+     * and listener. Closing it does nothing, the manifests are saved when the given writer is closed.
+     */
+    public GeneratedFileWriter(GeneratedFileWriter shared, Log log, GenerationListener listener) {
+        this.writeIfChanged = shared.writeIfChanged;
+        this.manifestDirectory = shared.manifestDirectory;
+        this.log = log != null ? log : shared.log;
+        this.listener = listener != null ? listener : GenerationListener.NONE;
+        this.generatorIgnores = shared.generatorIgnores;
+        this.manifests = shared.manifests;
+        this.directories = shared.directories;
+        this.manifestOwner = false;
+    }
+
+    /**
+     * Writes the files in parallel on the given executor and waits until all of them are written.
+     */
+    public void writeAll(File targetDirectory, Collection<GeneratedFile> generatedFiles, Executor executor) {
+        CompletableFuture.allOf(generatedFiles.stream()
+                .map(f -> CompletableFuture.runAsync(() -> write(targetDirectory, f), executor))
+                .toArray(CompletableFuture[]::new)).join();
+    }
+
+    public void write(File targetDirectory, GeneratedFile generatedFile) {
+        statistics.start();
+        File outFile = new File(targetDirectory, generatedFile.getPath());
+        // The same directory can be given by different paths
+        Path directoryKey = targetDirectory.getAbsoluteFile().toPath().normalize();
+        GeneratorIgnore generatorIgnore = generatorIgnores.computeIfAbsent(directoryKey, d -> new GeneratorIgnore(targetDirectory.toPath()));
+        if (generatorIgnore.shouldExcludeFile(outFile.toPath())) {
+            statistics.skipped.incrementAndGet();
+            return;
+        }
+        try {
+            byte[] content = generatedFile.getContent();
+            GenerationManifest manifest = null;
+            String hash = null;
+            if (writeIfChanged) {
+                manifest = manifests.computeIfAbsent(directoryKey, d -> GenerationManifest.load(targetDirectory, manifestDirectory));
+                hash = Hashing.sha256().hashBytes(content).toString();
+                if (manifest.isUnchanged(generatedFile.getPath(), hash, outFile)) {
+                    manifest.keep(generatedFile.getPath());
+                    statistics.unchanged.incrementAndGet();
+                    return;
+                }
+            }
+            long startTime = System.nanoTime();
+            createDirectory(outFile.toPath().getParent());
+            Files.write(outFile.toPath(), content);
+            if (manifest != null) {
+                manifest.put(generatedFile.getPath(), hash, outFile);
+            }
+            statistics.written.incrementAndGet();
+            statistics.bytes.addAndGet(content.length);
+            statistics.finish();
+            listener.fileWritten(outFile, content.length, System.nanoTime() - startTime);
+        } catch (Exception exception) {
+            log.error("Could not write file: " + outFile.getAbsolutePath(), exception);
+        }
+    }
+
+    private void createDirectory(Path directory) throws IOException {
+        if (directory != null && !directories.contains(directory)) {
+            Files.createDirectories(directory);
+            directories.add(directory);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (!manifestOwner) {
+            return;
+        }
+        for (GenerationManifest manifest : manifests.values()) {
+            try {
+                manifest.save();
+            } catch (IOException e) {
+                log.error("Could not write generation manifest: " + manifest.getManifestFile().getAbsolutePath(), e);
+            }
+        }
+    }
+
+    public static final class Statistics {
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong skipped = new AtomicLong();
+        private final AtomicLong unchanged = new AtomicLong();
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong startNanos = new AtomicLong();
+        private final AtomicLong endNanos = new AtomicLong();
+
+        private void start() {
+            if (startNanos.get() == 0) {
+                startNanos.compareAndSet(0, System.nanoTime());
+            }
+        }
+
+        private void finish() {
+            endNanos.accumulateAndGet(System.nanoTime(), Math::max);
+        }
+
+        public long getWritten() {
+            return written.get();
+        }
+
+        public long getSkipped() {
+            return skipped.get();
+        }
+
+        public long getUnchanged() {
+            return unchanged.get();
+        }
+
+        public long getBytes() {
+            return bytes.get();
+        }
+
+        /**
+         * Returns the time between the first write request and the end of the last written file in milliseconds.
+         * In streaming mode it covers the rendering too, because the files are written while they are rendered.
+         */
+        public long getElapsedMillis() {
+            long start = startNanos.get();
+            long end = endNanos.get();
+            return start != 0 && end > start ? TimeUnit.NANOSECONDS.toMillis(end - start) : 0;
+        }
+
+        public double getFilesPerSecond() {
+            return perSecond(getWritten());
+        }
+
+        public double getBytesPerSecond() {
+            return perSecond(getBytes());
+        }
+
+        private double perSecond(long count) {
+            long start = startNanos.get();
+            long end = endNanos.get();
+            return start != 0 && end > start ? count * 1_000_000_000.0 / (end - start) : 0;
+        }
+
+        @Override
+        public String toString() {
+            return "written: " + getWritten() + ", unchanged: " + getUnchanged() + ", skipped: " + getSkipped()
+                    + String.format(Locale.ROOT, " (%d KB in %d ms, %.0f files/s, %.1f MB/s)", getBytes() / 1024, getElapsedMillis(),
+                    getFilesPerSecond(), getBytesPerSecond() / (1024 * 1024));
+        }
+    }
+}
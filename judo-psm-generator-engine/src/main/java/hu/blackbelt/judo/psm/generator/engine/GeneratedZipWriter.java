@@ -0,0 +1,130 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
+import org.apache.commons.compress.archivers.zip.Zip64Mode;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.ZipEntry;
+
+/**
+ * Writes generated files as ZIP archive. The entries are compressed in parallel on the given executor and they are
+ * written to the archive in a deterministic order as they are completed, so only a limited number of compressed entries
+ * are held in memory.
+ */
+public final class GeneratedZipWriter {
+
+    private GeneratedZipWriter() {
+    }
+
+    public static void write(Collection<GeneratedFile> generatedFiles, Path target, ZipExportParameter parameter) throws IOException {
+        try (ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(target.toFile())) {
+            write(generatedFiles, zipOutputStream, parameter);
+        }
+    }
+
+    /**
+     * Writes the archive to the given stream. The stream is not closed.
+     */
+    public static void write(Collection<GeneratedFile> generatedFiles, OutputStream target, ZipExportParameter parameter) throws IOException {
+        ZipArchiveOutputStream zipOutputStream = new ZipArchiveOutputStream(target);
+        write(generatedFiles, zipOutputStream, parameter);
+        zipOutputStream.finish();
+        zipOutputStream.flush();
+    }
+
+    private static void write(Collection<GeneratedFile> generatedFiles, ZipArchiveOutputStream zipOutputStream, ZipExportParameter parameter) throws IOException {
+        zipOutputStream.setUseZip64(Zip64Mode.AsNeeded);
+
+        List<GeneratedFile> entries = new ArrayList<>();
+        for (GeneratedFile generatedFile : generatedFiles) {
+            if (generatedFile.getPath() != null && generatedFile.getContent() != null) {
+                entries.add(generatedFile);
+            }
+        }
+        if (parameter.sortEntries) {
+            entries.sort(Comparator.comparing(GeneratedFile::getPath));
+        }
+
+        int maxPendingEntries = parameter.maxPendingEntries > 0
+                ? parameter.maxPendingEntries : 2 * Runtime.getRuntime().availableProcessors();
+        long time = parameter.entryTime != null ? parameter.entryTime : System.currentTimeMillis();
+        // ZipArchiveEntry converts the time to local DOS time, the offset is removed to store the UTC time.
+        long entryTime = time - TimeZone.getDefault().getOffset(time);
+
+        Deque<CompletableFuture<CompressedEntry>> pending = new ArrayDeque<>();
+        Iterator<GeneratedFile> iterator = entries.iterator();
+        try {
+            while (iterator.hasNext() || !pending.isEmpty()) {
+                while (iterator.hasNext() && pending.size() < maxPendingEntries) {
+                    GeneratedFile generatedFile = iterator.next();
+                    pending.add(CompletableFuture.supplyAsync(() -> compress(generatedFile, parameter, entryTime), parameter.executor));
+                }
+                CompressedEntry compressedEntry = pending.poll().join();
+                zipOutputStream.addRawArchiveEntry(compressedEntry.entry, new ByteArrayInputStream(compressedEntry.content));
+            }
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof UncheckedIOException) {
+                throw ((UncheckedIOException) e.getCause()).getCause();
+            }
+            throw e;
+        } finally {
+            // When the compression or the writing of an entry fails, the entries not started yet are not compressed
+            pending.forEach(f -> f.cancel(false));
+        }
+    }
+
+    private static CompressedEntry compress(GeneratedFile generatedFile, ZipExportParameter parameter, long entryTime) {
+        byte[] content = generatedFile.getContent();
+        CRC32 crc = new CRC32();
+        crc.update(content);
+
+        ZipArchiveEntry entry = new ZipArchiveEntry(generatedFile.getPath());
+        entry.setTime(entryTime);
+        entry.setSize(content.length);
+        entry.setCrc(crc.getValue());
+
+        if (parameter.store) {
+            entry.setMethod(ZipEntry.STORED);
+            entry.setCompressedSize(content.length);
+            return new CompressedEntry(entry, content);
+        }
+
+        Deflater deflater = new Deflater(parameter.compressionLevel, true);
+        try {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream(Math.max(64, content.length / 2));
+            try (DeflaterOutputStream deflaterOutputStream = new DeflaterOutputStream(compressed, deflater, 8192)) {
+                deflaterOutputStream.write(content);
+            }
+            entry.setMethod(ZipEntry.DEFLATED);
+            entry.setCompressedSize(compressed.size());
+            return new CompressedEntry(entry, compressed.toByteArray());
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not compress: " + generatedFile.getPath(), e);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static final class CompressedEntry {
+        private final ZipArchiveEntry entry;
+        private final byte[] content;
+
+        private CompressedEntry(ZipArchiveEntry entry, byte[] content) {
+            this.entry = entry;
+            this.content = content;
+        }
+    }
+}
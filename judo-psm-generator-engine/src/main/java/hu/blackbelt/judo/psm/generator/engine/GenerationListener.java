@@ -0,0 +1,44 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
+import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
+
+import java.io.File;
+
+/**
+ * Receives timing events of the generation. The durations are in nanoseconds. The file events are sent from the
+ * render threads, so the implementations have to be thread safe. See {@link GenerationReport}.
+ */
+public interface GenerationListener {
+
+    GenerationListener NONE = new GenerationListener() {
+    };
+
+    /**
+     * Called when the generation is started with the time spent to create the generator context.
+     */
+    default void contextCreated(PsmGeneratorContext generatorContext, long nanos) {
+    }
+
+    /**
+     * Called when the expressions of the template are parsed and the template is compiled.
+     */
+    default void templatePrepared(GeneratorTemplate template, long nanos) {
+    }
+
+    /**
+     * Called when the factory expression of the template is evaluated. The actor type is null for templates
+     * which are not actor type based.
+     */
+    default void factoryEvaluated(GeneratorTemplate template, ActorType actorType, int elements, long nanos) {
+    }
+
+    default void fileRendered(GeneratorTemplate template, GeneratedFile generatedFile, long nanos) {
+    }
+
+    default void fileWritten(File file, long bytes, long nanos) {
+    }
+
+    default void generationFinished(long nanos) {
+    }
+}
@@ -0,0 +1,143 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Generation manifest stores the relative path, the content hash, the size and the modification time of every file
+ * written to a target directory by the last generation. It is stored as `.generator-manifest` JSON file in the
+ * target directory or, when a manifest directory is given, in that directory named by the target directory.
+ * The previous state is loaded once, the current state is collected during the generation and replaces
+ * the previous one on {@link #save()}.
+ */
+@Slf4j
+public class GenerationManifest {
+
+    public static final String MANIFEST_FILE_NAME = ".generator-manifest";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    @Getter
+    private final File targetDirectory;
+
+    @Getter
+    private final File manifestFile;
+
+    private final Map<String, Entry> previous;
+
+    private final Map<String, Entry> current = new ConcurrentHashMap<>();
+
+    private GenerationManifest(File targetDirectory, File manifestFile, Map<String, Entry> previous) {
+        this.targetDirectory = targetDirectory;
+        this.manifestFile = manifestFile;
+        this.previous = previous;
+    }
+
+    public static GenerationManifest load(File targetDirectory) {
+        return load(targetDirectory, null);
+    }
+
+    /**
+     * Loads the manifest of the target directory.
+     *
+     * @param manifestDirectory directory of the manifest files, when it is null the manifest is stored in the target directory
+     */
+    public static GenerationManifest load(File targetDirectory, File manifestDirectory) {
+        File manifestFile = getManifestFile(targetDirectory, manifestDirectory);
+        Map<String, Entry> previous = new TreeMap<>();
+        if (manifestFile.isFile()) {
+            try {
+                Manifest manifest = MAPPER.readValue(manifestFile, Manifest.class);
+                if (manifest.files != null) {
+                    previous.putAll(manifest.files);
+                }
+            } catch (IOException e) {
+                log.warn("Could not read generation manifest, all files will be written: " + manifestFile.getAbsolutePath(), e);
+            }
+        }
+        return new GenerationManifest(targetDirectory, manifestFile, previous);
+    }
+
+    /**
+     * Returns the manifest file of the target directory. In the manifest directory the file is named by the name
+     * and the hash of the absolute path of the target directory, so more target directories can share it.
+     */
+    public static File getManifestFile(File targetDirectory, File manifestDirectory) {
+        if (manifestDirectory == null) {
+            return new File(targetDirectory, MANIFEST_FILE_NAME);
+        }
+        String path = targetDirectory.getAbsoluteFile().toPath().normalize().toString();
+        return new File(manifestDirectory, targetDirectory.getName() + "-"
+                + Hashing.sha256().hashString(path, StandardCharsets.UTF_8).toString().substring(0, 16) + MANIFEST_FILE_NAME);
+    }
+
+    /**
+     * Returns true when the file of the given path was written by the previous generation with the same content hash
+     * and it is not modified since, its size and modification time are the same as the recorded ones.
+     */
+    public boolean isUnchanged(String path, String hash, File file) {
+        Entry entry = previous.get(path);
+        return entry != null && hash.equals(entry.hash) && entry.matches(file);
+    }
+
+    /**
+     * Returns true when the previous generation is recorded and all of its files exist unmodified.
+     */
+    public boolean isUpToDate() {
+        return manifestFile.isFile() && !previous.isEmpty() && previous.entrySet().stream()
+                .allMatch(e -> e.getValue().matches(new File(targetDirectory, e.getKey())));
+    }
+
+    /**
+     * Records the written file. It has to be called after the file is written, so the size and modification time
+     * of the written file are stored.
+     */
+    public void put(String path, String hash, File file) {
+        Entry entry = new Entry();
+        entry.hash = hash;
+        entry.size = file.length();
+        entry.lastModified = file.lastModified();
+        current.put(path, entry);
+    }
+
+    /**
+     * Keeps the previous record of the path, it is used when the file is not written because it is unchanged.
+     */
+    public void keep(String path) {
+        Entry entry = previous.get(path);
+        if (entry != null) {
+            current.put(path, entry);
+        }
+    }
+
+    public void save() throws IOException {
+        Manifest manifest = new Manifest();
+        manifest.files = new TreeMap<>(current);
+        manifestFile.getParentFile().mkdirs();
+        MAPPER.writeValue(manifestFile, manifest);
+    }
+
+    static class Manifest {
+        public Map<String, Entry> files;
+    }
+
+    static class Entry {
+        public String hash;
+        public long size;
+        public long lastModified;
+
+        boolean matches(File file) {
+            return file.isFile() && file.length() == size && file.lastModified() == lastModified;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Runs render tasks on an executor with a limited number of tasks in flight. The submitting thread is blocked while
+ * the limit is reached, so the elements of the templates are scheduled as the previous files are completed instead
+ * of scheduling all of them up front. After the first failure the further tasks are not started.
+ */
+final class GenerationPipeline {
+
+    private final Executor executor;
+
+    private final int maxInFlight;
+
+    private final Semaphore permits;
+
+    private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+    GenerationPipeline(Executor executor, int maxInFlight) {
+        this.executor = executor;
+        this.maxInFlight = maxInFlight;
+        this.permits = new Semaphore(maxInFlight);
+    }
+
+    void submit(Supplier<?> task) {
+        if (failure.get() != null) {
+            return;
+        }
+        permits.acquireUninterruptibly();
+        try {
+            CompletableFuture.supplyAsync(task, executor).whenComplete((r, e) -> {
+                if (e != null) {
+                    failure.compareAndSet(null, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                }
+                permits.release();
+            });
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Waits until all of the submitted tasks are completed. It throws the first failure of the tasks.
+     */
+    void await() throws InterruptedException, ExecutionException {
+        permits.acquire(maxInFlight);
+        permits.release(maxInFlight);
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            throw new ExecutionException(throwable);
+        }
+    }
+}
@@ -0,0 +1,161 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
+import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Generation listener which collects the timings by template. The report can be formatted as text with the slowest
+ * templates or written as JSON.
+ */
+public class GenerationReport implements GenerationListener {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final Map<String, TemplateStatistics> templates = new ConcurrentHashMap<>();
+
+    private final LongAdder renderedFiles = new LongAdder();
+    private final LongAdder renderedBytes = new LongAdder();
+    private final LongAdder writtenFiles = new LongAdder();
+    private final LongAdder writtenBytes = new LongAdder();
+    private final LongAdder writeNanos = new LongAdder();
+
+    private volatile long contextNanos;
+    private volatile long generationNanos;
+
+    @Override
+    public void contextCreated(PsmGeneratorContext generatorContext, long nanos) {
+        contextNanos = nanos;
+    }
+
+    @Override
+    public void templatePrepared(GeneratorTemplate template, long nanos) {
+        getTemplateStatistics(template).prepareNanos.add(nanos);
+    }
+
+    @Override
+    public void factoryEvaluated(GeneratorTemplate template, ActorType actorType, int elements, long nanos) {
+        getTemplateStatistics(template).factoryNanos.add(nanos);
+    }
+
+    @Override
+    public void fileRendered(GeneratorTemplate template, GeneratedFile generatedFile, long nanos) {
+        long bytes = generatedFile.getContent() != null ? generatedFile.getContent().length : 0;
+        TemplateStatistics statistics = getTemplateStatistics(template);
+        statistics.files.increment();
+        statistics.bytes.add(bytes);
+        statistics.renderNanos.add(nanos);
+        statistics.maxRenderNanos.accumulate(nanos);
+        renderedFiles.increment();
+        renderedBytes.add(bytes);
+    }
+
+    @Override
+    public void fileWritten(File file, long bytes, long nanos) {
+        writtenFiles.increment();
+        writtenBytes.add(bytes);
+        writeNanos.add(nanos);
+    }
+
+    @Override
+    public void generationFinished(long nanos) {
+        generationNanos = nanos;
+    }
+
+    /**
+     * Returns the report as text with the given number of templates which took the most time.
+     */
+    public String format(int topTemplates) {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.ROOT, "Generation report - context: %d ms, generation: %d ms, files: %d, bytes: %d, %.0f files/s",
+                toMillis(contextNanos), toMillis(generationNanos), renderedFiles.sum(), renderedBytes.sum(), getFilesPerSecond()));
+        if (writtenFiles.sum() > 0) {
+            report.append(String.format(Locale.ROOT, ", written: %d files, %d bytes in %d ms (summed over threads)",
+                    writtenFiles.sum(), writtenBytes.sum(), toMillis(writeNanos.sum())));
+        }
+        getSlowestTemplates(topTemplates).forEach(t -> report.append(String.format(Locale.ROOT,
+                "%n  %s - total: %d ms, prepare: %d ms, factory: %d ms, render: %d ms, files: %d, max: %d ms, bytes: %d",
+                t.getKey(), toMillis(t.getValue().getTotalNanos()), toMillis(t.getValue().prepareNanos.sum()),
+                toMillis(t.getValue().factoryNanos.sum()), toMillis(t.getValue().renderNanos.sum()), t.getValue().files.sum(),
+                toMillis(t.getValue().maxRenderNanos.get()), t.getValue().bytes.sum())));
+        return report.toString();
+    }
+
+    public void writeJson(File file) throws IOException {
+        if (file.getParentFile() != null) {
+            file.getParentFile().mkdirs();
+        }
+        MAPPER.writeValue(file, toMap());
+    }
+
+    public Map<String, Object> toMap() {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("contextMillis", toMillis(contextNanos));
+        report.put("generationMillis", toMillis(generationNanos));
+        report.put("files", renderedFiles.sum());
+        report.put("bytes", renderedBytes.sum());
+        report.put("filesPerSecond", getFilesPerSecond());
+        report.put("writtenFiles", writtenFiles.sum());
+        report.put("writtenBytes", writtenBytes.sum());
+        report.put("writeMillis", toMillis(writeNanos.sum()));
+        List<Map<String, Object>> templateReports = new ArrayList<>();
+        getSlowestTemplates(Integer.MAX_VALUE).forEach(t -> {
+            Map<String, Object> templateReport = new LinkedHashMap<>();
+            templateReport.put("name", t.getKey());
+            templateReport.put("totalMillis", toMillis(t.getValue().getTotalNanos()));
+            templateReport.put("prepareMillis", toMillis(t.getValue().prepareNanos.sum()));
+            templateReport.put("factoryMillis", toMillis(t.getValue().factoryNanos.sum()));
+            templateReport.put("renderMillis", toMillis(t.getValue().renderNanos.sum()));
+            templateReport.put("maxRenderMillis", toMillis(t.getValue().maxRenderNanos.get()));
+            templateReport.put("files", t.getValue().files.sum());
+            templateReport.put("bytes", t.getValue().bytes.sum());
+            templateReports.add(templateReport);
+        });
+        report.put("templates", templateReports);
+        return report;
+    }
+
+    public double getFilesPerSecond() {
+        return generationNanos > 0 ? renderedFiles.sum() * 1_000_000_000.0 / generationNanos : 0;
+    }
+
+    private List<Map.Entry<String, TemplateStatistics>> getSlowestTemplates(int count) {
+        return templates.entrySet().stream()
+                .sorted(Comparator.comparingLong((Map.Entry<String, TemplateStatistics> e) -> e.getValue().getTotalNanos()).reversed())
+                .limit(count)
+                .collect(Collectors.toList());
+    }
+
+    private TemplateStatistics getTemplateStatistics(GeneratorTemplate template) {
+        String name = template.getName() != null ? template.getName()
+                : template.getTemplateName() != null ? template.getTemplateName() : template.getPathExpression();
+        return templates.computeIfAbsent(String.valueOf(name), n -> new TemplateStatistics());
+    }
+
+    private static long toMillis(long nanos) {
+        return TimeUnit.NANOSECONDS.toMillis(nanos);
+    }
+
+    private static final class TemplateStatistics {
+        private final LongAdder prepareNanos = new LongAdder();
+        private final LongAdder factoryNanos = new LongAdder();
+        private final LongAdder renderNanos = new LongAdder();
+        private final LongAccumulator maxRenderNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder files = new LongAdder();
+        private final LongAdder bytes = new LongAdder();
+
+        private long getTotalNanos() {
+            return prepareNanos.sum() + factoryNanos.sum() + renderNanos.sum();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Executor used to run the render tasks of one generation. The executor is created by the given {@link Mode}
+ * and the owned threads are released when it is closed.
+ * <ul>
+ *     <li>COMMON_POOL: tasks are running on JVM-wide common ForkJoinPool.</li>
+ *     <li>PLATFORM: bounded platform thread pool sized by parallelism (available processors when it is not positive).</li>
+ *     <li>VIRTUAL: one virtual thread per task. It requires Java 21, on older runtimes PLATFORM is used instead.</li>
+ *     <li>CALLER_RUNS: tasks are executed on the calling thread one by one. It can be used for debugging.</li>
+ * </ul>
+ */
+@Slf4j
+public final class GeneratorExecutor implements AutoCloseable {
+
+    public enum Mode {
+        COMMON_POOL,
+        PLATFORM,
+        VIRTUAL,
+        CALLER_RUNS
+    }
+
+    @Getter
+    private final Mode mode;
+
+    @Getter
+    private final int parallelism;
+
+    @Getter
+    private final Executor executor;
+
+    private final ExecutorService ownedExecutorService;
+
+    private GeneratorExecutor(Mode mode, int parallelism, Executor executor, ExecutorService ownedExecutorService) {
+        this.mode = mode;
+        this.parallelism = parallelism;
+        this.executor = executor;
+        this.ownedExecutorService = ownedExecutorService;
+    }
+
+    public static GeneratorExecutor create(Mode mode, int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        switch (mode == null ? Mode.COMMON_POOL : mode) {
+            case PLATFORM:
+                return createPlatform(threads);
+            case VIRTUAL:
+                ExecutorService virtual = createVirtualThreadPerTaskExecutor();
+                if (virtual == null) {
+                    log.warn("Virtual threads are not supported by the current runtime, using platform threads instead");
+                    return createPlatform(threads);
+                }
+                return new GeneratorExecutor(Mode.VIRTUAL, threads, virtual, virtual);
+            case CALLER_RUNS:
+                return new GeneratorExecutor(Mode.CALLER_RUNS, 1, MoreExecutors.directExecutor(), null);
+            default:
+                return new GeneratorExecutor(Mode.COMMON_POOL, ForkJoinPool.getCommonPoolParallelism(), ForkJoinPool.commonPool(), null);
+        }
+    }
+
+    private static GeneratorExecutor createPlatform(int threads) {
+        ExecutorService executorService = Executors.newFixedThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("psm-generator-%d")
+                .setDaemon(true)
+                .build());
+        return new GeneratorExecutor(Mode.PLATFORM, threads, executorService, executorService);
+    }
+
+    private static ExecutorService createVirtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    @Override
+    public void close() {
+        if (ownedExecutorService != null) {
+            ownedExecutorService.shutdown();
+        }
+    }
+}
@@ -10,6 +10,7 @@ import com.github.jknack.handlebars.internal.lang3.builder.ToStringStyle;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.expression.Expression;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.FileNotFoundException;
@@ -41,6 +42,12 @@ public class GeneratorModel {
 	@Builder.Default
 	private Collection<GeneratorTemplate> templates = new HashSet<>();
 
+	/**
+	 * SpringEL compiler mode used for factory, path and template context expressions (OFF, IMMEDIATE, MIXED).
+	 * When it is not set, the expressions are interpreted.
+	 */
+	private SpelCompilerMode expressionCompilerMode;
+
 	public static GeneratorModel loadYamlURL(String originalUri, URL yaml) throws IOException {
 		ObjectMapper mapper = new ObjectMapper(new YAMLFactory());
 		mapper.enable(DeserializationFeature.ACCEPT_EMPTY_ARRAY_AS_NULL_OBJECT);
@@ -59,6 +59,10 @@ public class GeneratorTemplate {
 	private boolean copy = false;
 
 	public Map<String, org.springframework.expression.Expression> parseExpressions() {
+		return parseExpressions(parser);
+	}
+
+	public Map<String, org.springframework.expression.Expression> parseExpressions(ExpressionParser parser) {
 		Map<String, org.springframework.expression.Expression> templateExpressions = new HashMap<>();
 		templateContext.stream().forEach(ctx -> {
 			final org.springframework.expression.Expression contextTemplate = parser.parseExpression(ctx.getExpression());
@@ -72,14 +76,23 @@ public class GeneratorTemplate {
 	}
 
 	public void evalToContextBuilder(TemplateEvaluator templateEvaluator, Context.Builder contextBuilder, StandardEvaluationContext templateExpressionContext) {
+		evalToContextBuilder(templateEvaluator, contextBuilder, templateExpressionContext, null);
+	}
+
+	/**
+	 * Evaluates the template context expressions and puts their values to the handlebars context.
+	 * The expressions using variables only (#self, #actorType, #model and the helper functions) are evaluated once
+	 * against the given evaluation context. The expressions referencing the root object (#root, #this or a property
+	 * without variable) are evaluated again using their own result as root object, as every expression was evaluated
+	 * by earlier versions. The ACTOR and RUN scoped expressions are evaluated once per actor type / generation
+	 * (see {@link TemplateSpringELExpression#getScope()}).
+	 */
+	public void evalToContextBuilder(TemplateEvaluator templateEvaluator, Context.Builder contextBuilder, StandardEvaluationContext templateExpressionContext, Object actorType) {
 		templateContext.stream().forEach(ctx -> {
 			Expression expression = templateEvaluator.getTemplateExpressions().get(ctx.getName());
 			if (expression != null) {
 				try {
-					Class type = templateEvaluator.getTemplateExpressions().get(ctx.getName()).getValueType(templateExpressionContext);
-					Object rootObject = templateEvaluator.getTemplateExpressions().get(ctx.getName()).getValue(templateExpressionContext, type);
-					Object value = templateEvaluator.getTemplateExpressions().get(ctx.getName()).getValue(templateExpressionContext, rootObject);
-					contextBuilder.combine(ctx.getName(), value);
+					contextBuilder.combine(ctx.getName(), templateEvaluator.evaluateTemplateExpression(ctx, templateExpressionContext, actorType));
 				} catch (Exception e) {
 					throw new IllegalArgumentException("Could not evaluate template context expression: " + expression.getExpressionString() + " in " + this);
 				}
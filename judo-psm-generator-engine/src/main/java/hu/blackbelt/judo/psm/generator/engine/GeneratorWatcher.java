@@ -0,0 +1,293 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import hu.blackbelt.epsilon.runtime.execution.api.Log;
+import hu.blackbelt.epsilon.runtime.execution.impl.BufferedSlf4jLogger;
+import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.emf.common.util.URI;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.LoadArguments.psmLoadArgumentsBuilder;
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Keeps the generator contexts of the descriptors in memory and generates them again when the model file or the files
+ * of the template directories are changed. Only local files are watched, templates of other URIs (for example archives)
+ * are loaded once. The descriptors share the model, helpers and compiled templates, see
+ * {@link PsmGenerator#createGeneratorContexts(PsmGenerator.CreateGeneratorContextArgument, List)}, and they are
+ * generated one after the other sharing the manifests of writeIfChanged.
+ * <ul>
+ *     <li>When a template is changed, the compiled templates are dropped and the contexts are reused.</li>
+ *     <li>When a descriptor (yaml) is changed, the contexts are created again with the loaded model.</li>
+ *     <li>When the model file is changed, the model is loaded again once and new contexts are created.</li>
+ * </ul>
+ * The changes arriving within the debounce time are handled by one generation. To regenerate only the affected
+ * outputs, the parameter factory should set the incremental state directory and writeIfChanged, see
+ * {@link PsmGeneratorParameter}. A failed generation is logged and the watcher waits for the next change.
+ * <pre>
+ * try (GeneratorWatcher watcher = GeneratorWatcher.generatorWatcher()
+ *         .contextArgument(contextArgument)
+ *         .descriptorNames(descriptorNames)
+ *         .modelFile(modelFile)
+ *         .parameterFactory((descriptorName, ctx) -> psmGeneratorParameter().generatorContext(ctx)...)
+ *         .build()) {
+ *     watcher.run();
+ * }
+ * </pre>
+ */
+@Slf4j
+public final class GeneratorWatcher implements AutoCloseable {
+
+    public static final long DEFAULT_DEBOUNCE_MILLIS = 100;
+
+    private final PsmGenerator.CreateGeneratorContextArgument contextArgument;
+
+    private final Path modelFile;
+
+    private final String modelName;
+
+    private final List<String> descriptorNames;
+
+    private final BiFunction<String, PsmGeneratorContext, PsmGeneratorParameter.PsmGeneratorParameterBuilder> parameterFactory;
+
+    private final List<Path> templateDirectories;
+
+    private final long debounceMillis;
+
+    private final BiConsumer<String, GeneratedFileWriter.Statistics> generationCallback;
+
+    private final Map<WatchKey, Path> watchKeys = new HashMap<>();
+
+    private volatile WatchService watchService;
+
+    private volatile boolean closed;
+
+    private PsmModel psmModel;
+
+    private List<PsmGeneratorContext> generatorContexts;
+
+    /**
+     * @param contextArgument    arguments of the context creation, its model is used until the model file is changed
+     * @param descriptorNames    descriptors to generate, by default the descriptor of contextArgument
+     * @param modelFile          model file to watch, it is loaded when the model of contextArgument is not set
+     * @param modelName          name of the loaded model
+     * @param parameterFactory   creates the generation parameter for the descriptor name and its context
+     * @param watchedDirectories template directories to watch, by default the directories of the file template URIs
+     * @param debounceMillis     time to wait for further changes after a change
+     * @param generationCallback called with the descriptor name after every successful generation of a descriptor
+     */
+    @Builder(builderMethodName = "generatorWatcher")
+    private GeneratorWatcher(@NonNull PsmGenerator.CreateGeneratorContextArgument contextArgument,
+                             List<String> descriptorNames,
+                             File modelFile,
+                             String modelName,
+                             @NonNull BiFunction<String, PsmGeneratorContext, PsmGeneratorParameter.PsmGeneratorParameterBuilder> parameterFactory,
+                             Collection<File> watchedDirectories,
+                             Long debounceMillis,
+                             BiConsumer<String, GeneratedFileWriter.Statistics> generationCallback) {
+        this.contextArgument = contextArgument;
+        this.descriptorNames = descriptorNames != null && !descriptorNames.isEmpty()
+                ? new ArrayList<>(descriptorNames)
+                : Collections.singletonList(contextArgument.getDescriptorName());
+        this.modelFile = modelFile != null ? modelFile.toPath().toAbsolutePath().normalize() : null;
+        this.modelName = modelName != null ? modelName : "model";
+        this.parameterFactory = parameterFactory;
+        this.debounceMillis = debounceMillis != null ? debounceMillis : DEFAULT_DEBOUNCE_MILLIS;
+        this.generationCallback = generationCallback;
+
+        Stream<File> directories = watchedDirectories != null
+                ? watchedDirectories.stream()
+                : contextArgument.getUris().values().stream()
+                        .filter(u -> "file".equals(u.getScheme()))
+                        .map(File::new);
+        this.templateDirectories = directories
+                .filter(File::isDirectory)
+                .map(f -> f.toPath().toAbsolutePath().normalize())
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Generates, then waits for changes and generates again until the watcher is closed or the thread is interrupted.
+     * When the first generation fails, the exception is thrown.
+     */
+    public void run() throws Exception {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            watchService = FileSystems.getDefault().newWatchService();
+        }
+        try {
+            for (Path directory : templateDirectories) {
+                registerRecursively(directory);
+            }
+            if (modelFile != null) {
+                register(modelFile.getParent());
+            }
+            log.info("Watching {} template directories{}", templateDirectories.size(),
+                    modelFile != null ? " and model file " + modelFile : "");
+
+            psmModel = contextArgument.getPsmModel() != null || modelFile == null ? contextArgument.getPsmModel() : loadModel();
+            generatorContexts = createContexts();
+            generate();
+
+            while (!closed) {
+                Set<Path> changes = new LinkedHashSet<>();
+                boolean overflow = collect(watchService.take(), changes);
+                WatchKey next;
+                while ((next = watchService.poll(debounceMillis, TimeUnit.MILLISECONDS)) != null) {
+                    overflow |= collect(next, changes);
+                }
+
+                boolean modelChanged = overflow || modelFile != null && changes.contains(modelFile);
+                List<Path> templateChanges = changes.stream().filter(this::isTemplate).collect(Collectors.toList());
+                boolean descriptorChanged = overflow || templateChanges.stream()
+                        .anyMatch(p -> p.getFileName().toString().endsWith(PsmGenerator.YAML));
+                if (!modelChanged && templateChanges.isEmpty()) {
+                    continue;
+                }
+                log.info("Changed: {}", overflow ? "(too many changes)" : Stream.concat(
+                        modelChanged ? Stream.of(modelFile) : Stream.empty(), templateChanges.stream())
+                        .map(Path::toString).collect(Collectors.joining(", ")));
+
+                try {
+                    if (modelChanged && modelFile != null) {
+                        psmModel = loadModel();
+                    }
+                    if (modelChanged || descriptorChanged) {
+                        generatorContexts = createContexts();
+                    } else {
+                        // The contexts share the template cache
+                        generatorContexts.get(0).templateCache.clear();
+                    }
+                    generate();
+                } catch (Exception e) {
+                    log.error("Generation failed, waiting for the next change", e);
+                }
+            }
+        } catch (ClosedWatchServiceException e) {
+            // Closed while waiting for changes
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            close();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        closed = true;
+        if (watchService != null) {
+            watchService.close();
+        }
+    }
+
+    private PsmModel loadModel() throws IOException, PsmModel.PsmValidationException {
+        long startTime = System.nanoTime();
+        PsmModel model = PsmModel.loadPsmModel(psmLoadArgumentsBuilder()
+                .file(modelFile.toFile())
+                .uri(URI.createFileURI(modelFile.toString()))
+                .validateModel(false)
+                .name(modelName));
+        log.info("Model loaded in {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+        return model;
+    }
+
+    private List<PsmGeneratorContext> createContexts() throws IOException {
+        return PsmGenerator.createGeneratorContexts(PsmGenerator.CreateGeneratorContextArgument.builder()
+                .psmModel(psmModel)
+                .uris(contextArgument.getUris())
+                .helpers(contextArgument.getHelpers())
+                .contextAccessor(contextArgument.getContextAccessor())
+                .urlTemplateLoaderFactory(contextArgument.getUrlTemplateLoaderFactory())
+                .urlResolverFactory(contextArgument.getUrlResolverFactory())
+                .expressionCompilerMode(contextArgument.getExpressionCompilerMode())
+                .build(), descriptorNames);
+    }
+
+    /**
+     * Generates the descriptors one after the other. They share the manifests of writeIfChanged, so the descriptors
+     * of the same target directory keep the files of each other, the writeIfChanged and manifestDirectory of the
+     * first parameter are used.
+     */
+    private void generate() throws Exception {
+        List<PsmGeneratorParameter> parameters = new ArrayList<>();
+        for (int i = 0; i < descriptorNames.size(); i++) {
+            parameters.add(parameterFactory.apply(descriptorNames.get(i), generatorContexts.get(i)).build());
+        }
+        try (Log writerLog = new BufferedSlf4jLogger(log);
+             GeneratedFileWriter sharedWriter = new GeneratedFileWriter(parameters.get(0).writeIfChanged,
+                     parameters.get(0).manifestDirectory, writerLog, null)) {
+            for (int i = 0; i < descriptorNames.size(); i++) {
+                long startTime = System.nanoTime();
+                GeneratedFileWriter.Statistics statistics = PsmGenerator.generateToDirectory(parameters.get(i), sharedWriter);
+                log.info("Generated {} in {} ms - {}", descriptorNames.get(i),
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), statistics);
+                if (generationCallback != null) {
+                    generationCallback.accept(descriptorNames.get(i), statistics);
+                }
+            }
+        }
+    }
+
+    /**
+     * Adds the changed paths of the key to changes and registers the created directories.
+     *
+     * @return true when events are lost
+     */
+    private boolean collect(WatchKey key, Set<Path> changes) throws IOException {
+        boolean overflow = false;
+        Path directory = watchKeys.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path path = directory.resolve((Path) event.context());
+            String name = path.getFileName().toString();
+            if (name.startsWith(".") || name.endsWith("~")) {
+                // Hidden and backup files of editors
+                continue;
+            }
+            if (event.kind() == ENTRY_CREATE && isTemplate(path) && Files.isDirectory(path, LinkOption.NOFOLLOW_LINKS)) {
+                registerRecursively(path);
+            }
+            changes.add(path);
+        }
+        if (!key.reset()) {
+            watchKeys.remove(key);
+        }
+        return overflow;
+    }
+
+    private boolean isTemplate(Path path) {
+        return templateDirectories.stream().anyMatch(path::startsWith);
+    }
+
+    private void registerRecursively(Path directory) throws IOException {
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                register(path);
+            }
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        watchKeys.put(directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), directory);
+    }
+}
@@ -0,0 +1,317 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.ByteStreams;
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
+import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.emf.ecore.EObject;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * State of the incremental generation. For every output (template, element, actor type) it stores the generated
+ * path, the content and the fingerprints of the model elements read while the output was rendered
+ * (see {@link ModelReadTracker}). The fingerprint of an element covers the elements reachable from it
+ * (see {@link ModelFingerprint}). On the next run the output is reused from the state directory when none of
+ * these fingerprints are changed.
+ * All the outputs are rendered again when the templates, helpers, parameters, selected actor types or the structure
+ * of the model (added, removed or moved elements) are changed.
+ */
+@Slf4j
+public class IncrementalGenerationState {
+
+    public static final String STATE_FILE_NAME = "state.json";
+    public static final String CONTENT_DIRECTORY_NAME = "content";
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final File stateDirectory;
+
+    private final String generatorFingerprint;
+
+    private final ModelFingerprint modelFingerprint;
+
+    private final Map<String, Output> previous;
+
+    private final Map<String, Output> current = new ConcurrentHashMap<>();
+
+    private final AtomicLong reused = new AtomicLong();
+
+    private final AtomicLong rendered = new AtomicLong();
+
+    private IncrementalGenerationState(File stateDirectory, String generatorFingerprint, ModelFingerprint modelFingerprint, Map<String, Output> previous) {
+        this.stateDirectory = stateDirectory;
+        this.generatorFingerprint = generatorFingerprint;
+        this.modelFingerprint = modelFingerprint;
+        this.previous = previous;
+    }
+
+    public static IncrementalGenerationState load(File stateDirectory, PsmGeneratorContext generatorContext,
+                                                  Map<String, ?> extraContextVariables, Collection<ActorType> actorTypes) {
+        ModelFingerprint modelFingerprint = new ModelFingerprint(generatorContext.getPsmModel().getResourceSet());
+        String generatorFingerprint = calculateGeneratorFingerprint(generatorContext, extraContextVariables, actorTypes, modelFingerprint);
+
+        Map<String, Output> previous = new HashMap<>();
+        File stateFile = new File(stateDirectory, STATE_FILE_NAME);
+        if (stateFile.isFile()) {
+            try {
+                State state = MAPPER.readValue(stateFile, State.class);
+                if (generatorFingerprint.equals(state.generatorFingerprint)
+                        && modelFingerprint.getStructureHash().equals(state.structureHash)
+                        && state.outputs != null) {
+                    previous.putAll(state.outputs);
+                } else {
+                    log.info("Templates, parameters or model structure changed, all files are generated");
+                }
+            } catch (IOException e) {
+                log.warn("Could not read incremental generation state, all files are generated: " + stateFile.getAbsolutePath(), e);
+            }
+        }
+        return new IncrementalGenerationState(stateDirectory, generatorFingerprint, modelFingerprint, previous);
+    }
+
+    /**
+     * Returns the previously generated file when none of its dependencies is changed, otherwise renders it with the
+     * given supplier and records the model elements read while rendering.
+     */
+    public GeneratedFile generate(GeneratorTemplate generatorTemplate, Object element, ActorType actorType, Supplier<GeneratedFile> renderer) {
+        String key = getOutputKey(generatorTemplate, element, actorType);
+        if (key == null) {
+            rendered.incrementAndGet();
+            return renderer.get();
+        }
+        GeneratedFile cached = reuse(key);
+        if (cached != null) {
+            reused.incrementAndGet();
+            return cached;
+        }
+        Set<EObject> reads = ModelReadTracker.start();
+        GeneratedFile generatedFile;
+        try {
+            ModelReadTracker.record(element);
+            ModelReadTracker.record(actorType);
+            generatedFile = renderer.get();
+        } finally {
+            ModelReadTracker.stop();
+        }
+        rendered.incrementAndGet();
+        record(key, generatedFile, reads);
+        return generatedFile;
+    }
+
+    public long getReused() {
+        return reused.get();
+    }
+
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    public void save() throws IOException {
+        State state = new State();
+        state.generatorFingerprint = generatorFingerprint;
+        state.structureHash = modelFingerprint.getStructureHash();
+        state.outputs = new TreeMap<>(current);
+        stateDirectory.mkdirs();
+        MAPPER.writeValue(new File(stateDirectory, STATE_FILE_NAME), state);
+
+        Set<String> usedContents = current.values().stream().map(o -> o.contentHash).collect(Collectors.toSet());
+        File[] contents = new File(stateDirectory, CONTENT_DIRECTORY_NAME).listFiles();
+        if (contents != null) {
+            for (File content : contents) {
+                if (!usedContents.contains(content.getName())) {
+                    content.delete();
+                }
+            }
+        }
+    }
+
+    private String getOutputKey(GeneratorTemplate generatorTemplate, Object element, ActorType actorType) {
+        String elementKey;
+        if (element instanceof EObject) {
+            elementKey = modelFingerprint.getId((EObject) element);
+        } else if (element instanceof GeneratorTemplate) {
+            elementKey = "template";
+        } else if (element instanceof CharSequence || element instanceof Number || element instanceof Boolean || element instanceof Enum) {
+            elementKey = element.getClass().getName() + ":" + element;
+        } else {
+            elementKey = null;
+        }
+        String actorTypeKey = actorType != null ? modelFingerprint.getId(actorType) : "";
+        if (elementKey == null || actorTypeKey == null) {
+            return null;
+        }
+        return generatorTemplate.getName() + "|" + generatorTemplate.getTemplateName() + "|" + generatorTemplate.getPathExpression()
+                + "|" + elementKey + "|" + actorTypeKey;
+    }
+
+    private GeneratedFile reuse(String key) {
+        Output output = previous.get(key);
+        if (output == null || output.dependencies == null) {
+            return null;
+        }
+        for (Map.Entry<String, String> dependency : output.dependencies.entrySet()) {
+            if (!dependency.getValue().equals(modelFingerprint.getFingerprint(dependency.getKey()))) {
+                return null;
+            }
+        }
+        File content = new File(new File(stateDirectory, CONTENT_DIRECTORY_NAME), output.contentHash);
+        if (!content.isFile()) {
+            return null;
+        }
+        GeneratedFile generatedFile = new GeneratedFile();
+        generatedFile.setPath(output.path);
+        try {
+            generatedFile.setContent(Files.readAllBytes(content.toPath()));
+        } catch (IOException e) {
+            log.warn("Could not read cached content: " + content.getAbsolutePath(), e);
+            return null;
+        }
+        current.put(key, output);
+        return generatedFile;
+    }
+
+    private void record(String key, GeneratedFile generatedFile, Set<EObject> reads) {
+        if (generatedFile.getContent() == null) {
+            return;
+        }
+        Output output = new Output();
+        output.path = generatedFile.getPath();
+        output.contentHash = Hashing.sha256().hashBytes(generatedFile.getContent()).toString();
+        output.dependencies = new TreeMap<>();
+        for (EObject read : reads) {
+            String id = modelFingerprint.getId(read);
+            if (id != null) {
+                output.dependencies.put(id, modelFingerprint.getFingerprint(id));
+            }
+        }
+
+        Path contentDirectory = new File(stateDirectory, CONTENT_DIRECTORY_NAME).toPath();
+        Path content = contentDirectory.resolve(output.contentHash);
+        try {
+            if (!Files.exists(content)) {
+                Files.createDirectories(contentDirectory);
+                Path temp = Files.createTempFile(contentDirectory, output.contentHash, ".tmp");
+                Files.write(temp, generatedFile.getContent());
+                Files.move(temp, content, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not store generated content: " + content, e);
+        }
+        current.put(key, output);
+    }
+
+    private static String calculateGeneratorFingerprint(PsmGeneratorContext generatorContext, Map<String, ?> extraContextVariables,
+                                                        Collection<ActorType> actorTypes, ModelFingerprint modelFingerprint) {
+        Hasher hasher = Hashing.sha256().newHasher();
+
+        generatorContext.getGeneratorModel().getTemplates().stream()
+                .map(t -> t.getName() + "|" + t.getTemplateName() + "|" + t.getTemplate() + "|" + t.getPathExpression() + "|"
+                        + t.getFactoryExpression() + "|" + t.isActorTypeBased() + "|" + t.isCopy() + "|"
+                        + t.getTemplateContext().stream().map(c -> c.getName() + "=" + c.getExpression() + "@" + c.getScope()).sorted().collect(Collectors.joining(",")))
+                .sorted()
+                .forEach(t -> hasher.putString(t, StandardCharsets.UTF_8));
+
+        for (URI uri : generatorContext.getTemplateUris()) {
+            hasher.putString(uri.toString(), StandardCharsets.UTF_8);
+            if ("file".equals(uri.getScheme()) && new File(uri).isDirectory()) {
+                Path root = new File(uri).toPath();
+                try (Stream<Path> files = Files.walk(root)) {
+                    for (Path file : files.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                        hasher.putString(root.relativize(file).toString(), StandardCharsets.UTF_8);
+                        hasher.putBytes(Files.readAllBytes(file));
+                    }
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Could not read templates: " + uri, e);
+                }
+            } else if (PathTemplateLoader.JAR_SCHEME.equals(uri.getScheme())) {
+                File archive = PathTemplateLoader.getArchive(uri).toFile();
+                hasher.putLong(archive.length()).putLong(archive.lastModified());
+            }
+        }
+
+        Stream.concat(generatorContext.getHelpers().stream(), Stream.ofNullable(generatorContext.getContextAccessor()))
+                .map(IncrementalGenerationState::getClassFingerprint)
+                .sorted()
+                .forEach(h -> hasher.putString(h, StandardCharsets.UTF_8));
+
+        extraContextVariables.entrySet().stream()
+                .filter(e -> e.getKey() != null)
+                .map(e -> e.getKey() + "=" + e.getValue())
+                .sorted()
+                .forEach(e -> hasher.putString(e, StandardCharsets.UTF_8));
+
+        actorTypes.stream().map(modelFingerprint::getId).filter(Objects::nonNull).sorted()
+                .forEach(a -> hasher.putString(a, StandardCharsets.UTF_8));
+
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the fingerprint of the class and of its code source. The class can delegate to other classes, so for a
+     * directory the path, size and modification time of every class file in it, for an archive its size and
+     * modification time is added.
+     */
+    static String getClassFingerprint(Class clazz) {
+        Hasher hasher = Hashing.sha256().newHasher().putString(clazz.getName(), StandardCharsets.UTF_8);
+        try (InputStream classFile = clazz.getResourceAsStream("/" + clazz.getName().replace('.', '/') + ".class")) {
+            if (classFile != null) {
+                hasher.putBytes(ByteStreams.toByteArray(classFile));
+            }
+        } catch (IOException e) {
+            // The class file is not available, the code source is used only
+        }
+        File location;
+        try {
+            location = new File(clazz.getProtectionDomain().getCodeSource().getLocation().toURI());
+        } catch (Exception e) {
+            // Location is not available, the class itself is used only
+            return hasher.hash().toString();
+        }
+        if (location.isDirectory()) {
+            Path root = location.toPath();
+            try (Stream<Path> files = Files.walk(root)) {
+                for (Path file : files.filter(f -> f.toString().endsWith(".class") && Files.isRegularFile(f)).sorted()
+                        .collect(Collectors.toList())) {
+                    hasher.putString(root.relativize(file).toString(), StandardCharsets.UTF_8)
+                            .putLong(Files.size(file))
+                            .putLong(Files.getLastModifiedTime(file).toMillis());
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not read classes: " + location, e);
+            }
+        } else if (location.isFile()) {
+            hasher.putLong(location.length()).putLong(location.lastModified());
+        }
+        return hasher.hash().toString();
+    }
+
+    static class State {
+        public String generatorFingerprint;
+        public String structureHash;
+        public Map<String, Output> outputs;
+    }
+
+    static class Output {
+        public String path;
+        public String contentHash;
+        public Map<String, String> dependencies;
+    }
+}
@@ -0,0 +1,57 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import lombok.Getter;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.ArrayList;
+
+/**
+ * SpringEL evaluation context layered over a parent context. The variables set on this context are visible only here,
+ * the variables which are not set here are looked up in the parent. The property accessors, method and constructor
+ * resolvers and the type handling of the parent are shared, so their reflection caches are reused between the
+ * contexts. The parent must not be modified while its children are used.
+ * The looked up variables are recorded by {@link ModelReadTracker} for the incremental generation.
+ */
+public class LayeredEvaluationContext extends StandardEvaluationContext {
+
+    @Getter
+    private final StandardEvaluationContext parent;
+
+    public LayeredEvaluationContext(StandardEvaluationContext parent) {
+        this.parent = parent;
+        setPropertyAccessors(new ArrayList<>(parent.getPropertyAccessors()));
+        setMethodResolvers(new ArrayList<>(parent.getMethodResolvers()));
+        setConstructorResolvers(new ArrayList<>(parent.getConstructorResolvers()));
+        setTypeLocator(parent.getTypeLocator());
+        setTypeConverter(parent.getTypeConverter());
+        setTypeComparator(parent.getTypeComparator());
+        setOperatorOverloader(parent.getOperatorOverloader());
+        if (parent.getBeanResolver() != null) {
+            setBeanResolver(parent.getBeanResolver());
+        }
+    }
+
+    /**
+     * Creates a context which is used as a parent of layered contexts. Lazy initialized parts are
+     * initialized here, so the context can be shared between threads.
+     */
+    public static StandardEvaluationContext createSharedRoot() {
+        StandardEvaluationContext root = new StandardEvaluationContext();
+        root.getPropertyAccessors();
+        root.getMethodResolvers();
+        root.getConstructorResolvers();
+        root.getTypeLocator();
+        root.getTypeConverter();
+        return root;
+    }
+
+    @Override
+    public Object lookupVariable(String name) {
+        Object value = super.lookupVariable(name);
+        if (value == null) {
+            value = parent.lookupVariable(name);
+        }
+        ModelReadTracker.record(value);
+        return value;
+    }
+}
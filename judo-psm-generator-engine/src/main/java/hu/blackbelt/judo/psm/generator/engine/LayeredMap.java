@@ -0,0 +1,44 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import java.util.AbstractMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Read only map layered over a shared map. The entries of the local map hide the shared entries with the same key.
+ * It is used as Handlebars context of generated files, so the variables shared by all of the files are not copied
+ * for every file.
+ */
+public class LayeredMap extends AbstractMap<String, Object> {
+
+    private final Map<String, ?> local;
+
+    private final Map<String, ?> shared;
+
+    public LayeredMap(Map<String, ?> local, Map<String, ?> shared) {
+        this.local = local;
+        this.shared = shared;
+    }
+
+    @Override
+    public Object get(Object key) {
+        Object value = local.get(key);
+        if (value == null) {
+            value = shared.get(key);
+        }
+        return value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return local.containsKey(key) || shared.containsKey(key);
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        Map<String, Object> entries = new LinkedHashMap<>(shared);
+        entries.putAll(local);
+        return entries.entrySet();
+    }
+}
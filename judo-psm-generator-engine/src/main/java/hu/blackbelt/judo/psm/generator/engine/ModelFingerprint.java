@@ -0,0 +1,224 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.google.common.hash.HashCode;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import lombok.Getter;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.*;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+import org.eclipse.emf.ecore.util.EcoreUtil;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+/**
+ * Content fingerprints of the model elements. The fingerprint of an element covers every element reachable from it
+ * through containment and non-containment references (their attributes and the identity of their referenced elements)
+ * and the own attributes of its containers. So a changed element changes the fingerprint of all the elements which can
+ * navigate to it, even when the navigation is done by a helper or a method call and the elements on the way are not
+ * recorded. The structure hash changes when any element is added, removed or moved.
+ * The fingerprints are calculated once on construction, the instance is immutable after that.
+ */
+public class ModelFingerprint {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Map<EObject, String> ids = new IdentityHashMap<>();
+
+    private final Map<EObject, HashCode> ownHashes = new IdentityHashMap<>();
+
+    private final Map<EObject, List<EObject>> crossReferences = new IdentityHashMap<>();
+
+    private final Map<String, String> fingerprints = new HashMap<>();
+
+    @Getter
+    private final String structureHash;
+
+    public ModelFingerprint(ResourceSet resourceSet) {
+        Hasher structure = HASH_FUNCTION.newHasher();
+        List<EObject> elements = new ArrayList<>();
+        Map<Resource, Integer> resourceIndexes = new IdentityHashMap<>();
+        for (Resource resource : resourceSet.getResources()) {
+            resourceIndexes.put(resource, resourceIndexes.size());
+        }
+        TreeIterator<Notifier> iterator = resourceSet.getAllContents();
+        while (iterator.hasNext()) {
+            Notifier notifier = iterator.next();
+            if (notifier instanceof EObject) {
+                EObject element = (EObject) notifier;
+                Resource resource = element.eResource();
+                String id = resourceIndexes.get(resource) + "#" + resource.getURIFragment(element);
+                ids.put(element, id);
+                elements.add(element);
+                structure.putString(id, StandardCharsets.UTF_8).putString(element.eClass().getName(), StandardCharsets.UTF_8);
+            }
+        }
+        structureHash = structure.hash().toString();
+
+        for (EObject element : elements) {
+            ownHashes.put(element, calculateOwnHash(element));
+        }
+
+        HashCode[] closureHashes = calculateClosureHashes(elements);
+        for (int i = 0; i < elements.size(); i++) {
+            EObject element = elements.get(i);
+            Hasher hasher = HASH_FUNCTION.newHasher().putBytes(closureHashes[i].asBytes());
+            for (EObject container = element.eContainer(); container != null; container = container.eContainer()) {
+                HashCode containerHash = ownHashes.get(container);
+                if (containerHash != null) {
+                    hasher.putBytes(containerHash.asBytes());
+                }
+            }
+            fingerprints.put(ids.get(element), hasher.hash().toString());
+        }
+    }
+
+    /**
+     * Returns the stable identifier of the given element or null when it is not part of the model.
+     */
+    public String getId(EObject element) {
+        return ids.get(element);
+    }
+
+    /**
+     * Returns the fingerprint of the element identified by the given id or null when it is not part of the model.
+     */
+    public String getFingerprint(String id) {
+        return fingerprints.get(id);
+    }
+
+    /**
+     * Calculates the hash of the elements reachable from every element. The references can form cycles, so the
+     * strongly connected components of the reference graph are calculated (iterative Tarjan algorithm), the elements
+     * of a component are reaching each other, so they share the hash. A component is completed after the components
+     * reachable from it, its hash covers the own hashes of its elements and the hashes of the reachable components.
+     */
+    private HashCode[] calculateClosureHashes(List<EObject> elements) {
+        int size = elements.size();
+        Map<EObject, Integer> indexes = new IdentityHashMap<>();
+        for (int i = 0; i < size; i++) {
+            indexes.put(elements.get(i), i);
+        }
+        int[][] successors = new int[size][];
+        for (int i = 0; i < size; i++) {
+            EObject element = elements.get(i);
+            Set<Integer> targets = new LinkedHashSet<>();
+            for (EObject child : element.eContents()) {
+                Integer index = indexes.get(child);
+                if (index != null) {
+                    targets.add(index);
+                }
+            }
+            for (EObject referenced : crossReferences.get(element)) {
+                Integer index = indexes.get(referenced);
+                if (index != null) {
+                    targets.add(index);
+                }
+            }
+            successors[i] = targets.stream().mapToInt(Integer::intValue).toArray();
+        }
+
+        HashCode[] closureHashes = new HashCode[size];
+        int[] order = new int[size];
+        int[] lowLink = new int[size];
+        int[] edge = new int[size];
+        boolean[] onStack = new boolean[size];
+        Deque<Integer> stack = new ArrayDeque<>();
+        Deque<Integer> path = new ArrayDeque<>();
+        Arrays.fill(order, -1);
+        int counter = 0;
+        for (int start = 0; start < size; start++) {
+            if (order[start] >= 0) {
+                continue;
+            }
+            order[start] = lowLink[start] = counter++;
+            stack.push(start);
+            onStack[start] = true;
+            path.push(start);
+            while (!path.isEmpty()) {
+                int node = path.peek();
+                if (edge[node] < successors[node].length) {
+                    int next = successors[node][edge[node]++];
+                    if (order[next] < 0) {
+                        order[next] = lowLink[next] = counter++;
+                        stack.push(next);
+                        onStack[next] = true;
+                        path.push(next);
+                    } else if (onStack[next]) {
+                        lowLink[node] = Math.min(lowLink[node], order[next]);
+                    }
+                    continue;
+                }
+                path.pop();
+                if (!path.isEmpty()) {
+                    int parent = path.peek();
+                    lowLink[parent] = Math.min(lowLink[parent], lowLink[node]);
+                }
+                if (lowLink[node] == order[node]) {
+                    List<Integer> component = new ArrayList<>();
+                    int member;
+                    do {
+                        member = stack.pop();
+                        onStack[member] = false;
+                        component.add(member);
+                    } while (member != node);
+                    HashCode hash = calculateComponentHash(elements, component, successors, closureHashes);
+                    for (int m : component) {
+                        closureHashes[m] = hash;
+                    }
+                }
+            }
+        }
+        return closureHashes;
+    }
+
+    private HashCode calculateComponentHash(List<EObject> elements, List<Integer> component, int[][] successors, HashCode[] closureHashes) {
+        Hasher hasher = HASH_FUNCTION.newHasher();
+        component.stream()
+                .map(elements::get)
+                .sorted(Comparator.comparing(ids::get))
+                .forEach(e -> hasher.putString(ids.get(e), StandardCharsets.UTF_8).putBytes(ownHashes.get(e).asBytes()));
+        Set<String> reachable = new TreeSet<>();
+        for (int member : component) {
+            for (int next : successors[member]) {
+                // The members of the component are not completed yet, the completed successors are other components
+                if (closureHashes[next] != null) {
+                    reachable.add(closureHashes[next].toString());
+                }
+            }
+        }
+        reachable.forEach(h -> hasher.putString(h, StandardCharsets.UTF_8));
+        return hasher.hash();
+    }
+
+    private HashCode calculateOwnHash(EObject element) {
+        Hasher hasher = HASH_FUNCTION.newHasher().putString(element.eClass().getName(), StandardCharsets.UTF_8);
+        List<EObject> references = new ArrayList<>();
+        for (EStructuralFeature feature : element.eClass().getEAllStructuralFeatures()) {
+            if (feature.isTransient() || feature.isDerived() || !element.eIsSet(feature)) {
+                continue;
+            }
+            hasher.putString(feature.getName(), StandardCharsets.UTF_8);
+            if (feature instanceof EAttribute) {
+                hasher.putString(String.valueOf(element.eGet(feature)), StandardCharsets.UTF_8);
+            } else if (!((EReference) feature).isContainment()) {
+                Object value = element.eGet(feature);
+                Collection<?> targets = feature.isMany() ? (Collection<?>) value : Collections.singletonList(value);
+                for (Object target : targets) {
+                    if (target instanceof EObject) {
+                        EObject referenced = (EObject) target;
+                        String id = ids.get(referenced);
+                        hasher.putString(id != null ? id : String.valueOf(EcoreUtil.getURI(referenced)), StandardCharsets.UTF_8);
+                        references.add(referenced);
+                    }
+                }
+            }
+        }
+        crossReferences.put(element, references);
+        return hasher.hash();
+    }
+}
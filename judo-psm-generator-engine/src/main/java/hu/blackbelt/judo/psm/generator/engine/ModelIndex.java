@@ -0,0 +1,173 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import org.eclipse.emf.common.notify.Notifier;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.ecore.EClass;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.resource.ResourceSet;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Index of the model elements built by one walk of the resource set. It is accessible as {@code #modelIndex} in
+ * SpringEL expressions and as {@code modelIndex} in templates, so the elements of a type, the container of a given type and the
+ * referencing elements can be looked up without walking the model.
+ * <ul>
+ *     <li>{@link #getByType()} / {@link #all(String)}: elements by EClass name, including the elements of subclasses,
+ *     for example {@code #modelIndex.all('EntityType')} or <code>{{#each modelIndex.byType.EntityType}}</code></li>
+ *     <li>{@link #all(Class)}: elements by Java type</li>
+ *     <li>{@link #container(EObject, String)}: the nearest container of the given EClass</li>
+ *     <li>{@link #referencing(EObject)} / {@link #referencing(EObject, String)}: the elements referencing the given
+ *     element by non-containment references, in templates the <code>{{#each (referencing self)}}</code> helper</li>
+ * </ul>
+ * The model is walked on the first access of the index, so a generation not using it does not pay for the walk.
+ * The lists are in model order and they are not modifiable. The index is immutable after it is built, it reflects
+ * the model at the time of the first access.
+ * Non-containment references are resolved, so the proxies are replaced by the referenced elements.
+ */
+public class ModelIndex {
+
+    private final Supplier<Elements> elements;
+
+    private static final class Reference {
+        private final EObject source;
+        private final EReference reference;
+
+        private Reference(EObject source, EReference reference) {
+            this.source = source;
+            this.reference = reference;
+        }
+    }
+
+    /**
+     * Elements of the model collected by one walk.
+     */
+    private static final class Elements {
+        private final Map<String, List<EObject>> byType;
+        private final Map<EObject, List<Reference>> referencing = new IdentityHashMap<>();
+        private final Map<Class<?>, List<?>> byJavaType = new ConcurrentHashMap<>();
+        private final List<EObject> elements = new ArrayList<>();
+
+        private Elements(ResourceSet resourceSet) {
+            Map<EClass, List<String>> typeNames = new HashMap<>();
+            Map<String, List<EObject>> types = new HashMap<>();
+            TreeIterator<Notifier> iterator = resourceSet.getAllContents();
+            while (iterator.hasNext()) {
+                Notifier notifier = iterator.next();
+                if (notifier instanceof EObject) {
+                    EObject element = (EObject) notifier;
+                    elements.add(element);
+                    for (String typeName : typeNames.computeIfAbsent(element.eClass(), ModelIndex::getTypeNames)) {
+                        types.computeIfAbsent(typeName, n -> new ArrayList<>()).add(element);
+                    }
+                }
+            }
+            // Resolving a proxy can load a resource into the resource set, so the references are resolved after the walk
+            for (EObject element : elements) {
+                for (EReference reference : element.eClass().getEAllReferences()) {
+                    if (reference.isContainment() || reference.isContainer() || reference.isDerived() || reference.isTransient()
+                            || !element.eIsSet(reference)) {
+                        continue;
+                    }
+                    Object value = element.eGet(reference, true);
+                    Collection<?> targets = value instanceof Collection ? (Collection<?>) value : Collections.singleton(value);
+                    for (Object target : targets) {
+                        if (target instanceof EObject) {
+                            referencing.computeIfAbsent((EObject) target, t -> new ArrayList<>()).add(new Reference(element, reference));
+                        }
+                    }
+                }
+            }
+            types.replaceAll((name, list) -> Collections.unmodifiableList(list));
+            byType = Collections.unmodifiableMap(types);
+        }
+    }
+
+    public ModelIndex(ResourceSet resourceSet) {
+        elements = Suppliers.memoize(() -> new Elements(resourceSet));
+    }
+
+    private static List<String> getTypeNames(EClass eClass) {
+        Set<String> names = new LinkedHashSet<>();
+        names.add(eClass.getName());
+        eClass.getEAllSuperTypes().forEach(s -> names.add(s.getName()));
+        return new ArrayList<>(names);
+    }
+
+    /**
+     * Elements by EClass name, including the elements of subclasses.
+     */
+    public Map<String, List<EObject>> getByType() {
+        return elements.get().byType;
+    }
+
+    /**
+     * Returns the elements of the given EClass name and its subclasses.
+     */
+    public List<EObject> all(String eClassName) {
+        return getByType().getOrDefault(eClassName, Collections.emptyList());
+    }
+
+    /**
+     * Returns the elements which are instances of the given Java type.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> List<T> all(Class<T> type) {
+        Elements index = elements.get();
+        return (List<T>) index.byJavaType.computeIfAbsent(type, t -> Collections.unmodifiableList(index.elements.stream()
+                .filter(t::isInstance)
+                .collect(Collectors.toList())));
+    }
+
+    /**
+     * Returns the first element of the given Java type or null when there is no such element.
+     */
+    public <T> T first(Class<T> type) {
+        List<T> all = all(type);
+        return all.isEmpty() ? null : all.get(0);
+    }
+
+    /**
+     * Returns the nearest container of the element which EClass or one of its super types has the given name,
+     * or null when there is no such container.
+     */
+    public EObject container(EObject element, String eClassName) {
+        for (EObject container = element.eContainer(); container != null; container = container.eContainer()) {
+            if (eClassName.equals(container.eClass().getName())
+                    || container.eClass().getEAllSuperTypes().stream().anyMatch(s -> eClassName.equals(s.getName()))) {
+                return container;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the elements referencing the given element by non-containment references.
+     */
+    public List<EObject> referencing(EObject element) {
+        return elements.get().referencing.getOrDefault(element, Collections.emptyList()).stream()
+                .map(r -> r.source)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * Returns the elements referencing the given element by the reference with the given name.
+     */
+    public List<EObject> referencing(EObject element, String referenceName) {
+        return elements.get().referencing.getOrDefault(element, Collections.emptyList()).stream()
+                .filter(r -> referenceName.equals(r.reference.getName()))
+                .map(r -> r.source)
+                .distinct()
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return elements.get().elements.size();
+    }
+}
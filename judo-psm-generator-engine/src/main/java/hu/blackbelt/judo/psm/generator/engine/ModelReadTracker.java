@@ -0,0 +1,186 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.github.jknack.handlebars.ValueResolver;
+import org.eclipse.emf.ecore.EObject;
+import org.springframework.core.convert.TypeDescriptor;
+import org.springframework.expression.AccessException;
+import org.springframework.expression.EvaluationContext;
+import org.springframework.expression.MethodExecutor;
+import org.springframework.expression.MethodResolver;
+import org.springframework.expression.PropertyAccessor;
+import org.springframework.expression.TypedValue;
+import org.springframework.expression.spel.support.ReflectivePropertyAccessor;
+
+import java.util.*;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Records the model elements read by the current thread while a file is rendered. The reads are collected
+ * from the Handlebars value resolution, the SpringEL property access, method calls and variable lookups.
+ * EMF has no hook for reading features, so the objects navigated by helpers internally are not recorded, only the
+ * objects they are called with. It is covered by {@link ModelFingerprint}, the fingerprint of a recorded element
+ * covers the elements reachable from it.
+ */
+public final class ModelReadTracker {
+
+    private static final ThreadLocal<Set<EObject>> READS = new ThreadLocal<>();
+
+    private static final PropertyAccessor TRACKING_PROPERTY_ACCESSOR = new TrackingPropertyAccessor();
+
+    private ModelReadTracker() {
+    }
+
+    /**
+     * Starts recording on the current thread. The returned set is filled until {@link #stop()} is called.
+     */
+    public static Set<EObject> start() {
+        Set<EObject> reads = Collections.newSetFromMap(new IdentityHashMap<>());
+        READS.set(reads);
+        return reads;
+    }
+
+    public static void stop() {
+        READS.remove();
+    }
+
+    public static void record(Object object) {
+        Set<EObject> reads = READS.get();
+        if (reads != null && object instanceof EObject) {
+            reads.add((EObject) object);
+        }
+    }
+
+    /**
+     * Calls the supplier and records the model elements read by it into the given set too.
+     */
+    public static <T> T recordInto(Set<EObject> into, Supplier<T> supplier) {
+        Set<EObject> reads = READS.get();
+        if (reads == null) {
+            return supplier.get();
+        }
+        READS.set(into);
+        try {
+            return supplier.get();
+        } finally {
+            READS.set(reads);
+            reads.addAll(into);
+        }
+    }
+
+    /**
+     * Returns the default Handlebars value resolvers and the given ones wrapped to record the resolved objects.
+     */
+    public static ValueResolver[] trackingValueResolvers(Collection<ValueResolver> valueResolvers) {
+        List<ValueResolver> resolvers = new ArrayList<>(Arrays.asList(ValueResolver.VALUE_RESOLVERS));
+        resolvers.addAll(valueResolvers);
+        return resolvers.stream().map(TrackingValueResolver::new).toArray(ValueResolver[]::new);
+    }
+
+    public static PropertyAccessor trackingPropertyAccessor() {
+        return TRACKING_PROPERTY_ACCESSOR;
+    }
+
+    /**
+     * Returns the given method resolvers wrapped to record the target and the result of the called methods.
+     */
+    public static List<MethodResolver> trackingMethodResolvers(List<MethodResolver> methodResolvers) {
+        return methodResolvers.stream().map(TrackingMethodResolver::new).collect(Collectors.toList());
+    }
+
+    private static final class TrackingValueResolver implements ValueResolver {
+        private final ValueResolver delegate;
+
+        private TrackingValueResolver(ValueResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public Object resolve(Object context, String name) {
+            Object value = delegate.resolve(context, name);
+            if (value != UNRESOLVED) {
+                record(context);
+                record(value);
+            }
+            return value;
+        }
+
+        @Override
+        public Object resolve(Object context) {
+            Object value = delegate.resolve(context);
+            if (value != UNRESOLVED) {
+                record(context);
+            }
+            return value;
+        }
+
+        @Override
+        public Set<Map.Entry<String, Object>> propertySet(Object context) {
+            record(context);
+            return delegate.propertySet(context);
+        }
+    }
+
+    private static final class TrackingMethodResolver implements MethodResolver {
+        private final MethodResolver delegate;
+
+        private TrackingMethodResolver(MethodResolver delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public MethodExecutor resolve(EvaluationContext context, Object targetObject, String name,
+                                      List<TypeDescriptor> argumentTypes) throws AccessException {
+            MethodExecutor executor = delegate.resolve(context, targetObject, name, argumentTypes);
+            return executor != null ? new TrackingMethodExecutor(executor) : null;
+        }
+    }
+
+    private static final class TrackingMethodExecutor implements MethodExecutor {
+        private final MethodExecutor delegate;
+
+        private TrackingMethodExecutor(MethodExecutor delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public TypedValue execute(EvaluationContext context, Object target, Object... arguments) throws AccessException {
+            record(target);
+            TypedValue value = delegate.execute(context, target, arguments);
+            record(value.getValue());
+            return value;
+        }
+    }
+
+    private static final class TrackingPropertyAccessor implements PropertyAccessor {
+        private final ReflectivePropertyAccessor delegate = new ReflectivePropertyAccessor();
+
+        @Override
+        public Class<?>[] getSpecificTargetClasses() {
+            return new Class<?>[] {EObject.class};
+        }
+
+        @Override
+        public boolean canRead(EvaluationContext context, Object target, String name) throws AccessException {
+            return delegate.canRead(context, target, name);
+        }
+
+        @Override
+        public TypedValue read(EvaluationContext context, Object target, String name) throws AccessException {
+            record(target);
+            TypedValue value = delegate.read(context, target, name);
+            record(value.getValue());
+            return value;
+        }
+
+        @Override
+        public boolean canWrite(EvaluationContext context, Object target, String name) throws AccessException {
+            return false;
+        }
+
+        @Override
+        public void write(EvaluationContext context, Object target, String name, Object newValue) throws AccessException {
+            throw new AccessException("Model elements are read only in templates");
+        }
+    }
+}
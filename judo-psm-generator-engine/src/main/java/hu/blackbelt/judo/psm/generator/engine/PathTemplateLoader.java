@@ -0,0 +1,270 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.github.jknack.handlebars.io.AbstractTemplateSource;
+import com.github.jknack.handlebars.io.TemplateSource;
+import com.github.jknack.handlebars.io.URLTemplateLoader;
+import hu.blackbelt.judo.generator.commons.URLResolver;
+
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.Charset;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Layered template loader of directories and directories of jar or zip archives. The archives are opened as zip
+ * {@link FileSystem}, so the templates are looked up in the central directory of the archive and read from the entry,
+ * the archive is not extracted. An archive directory is given as {@code jar:} URI, for example
+ * {@code jar:file:/repository/templates.jar!/templates/}, see {@link #getArchiveUri(Path, String)}.
+ * <p>
+ * The layers are searched in reverse order, a template of a later URI overrides the one of the earlier URIs. A
+ * template can be decorated by a template named with {@code .override} before the extension (for example
+ * {@code test1/actorname.override.hbs} decorates {@code test1/actorname.hbs}). The decorator includes the original
+ * template with the partial of its name, which is resolved in the layers before the decorator.
+ * <p>
+ * The loader has to be closed to close the opened archives.
+ */
+public class PathTemplateLoader extends URLTemplateLoader implements URLResolver, Closeable {
+
+    public static final String JAR_SCHEME = "jar";
+
+    private static final String ARCHIVE_SEPARATOR = "!/";
+
+    private static final String OVERRIDE = ".override";
+
+    /**
+     * Prefix of the partial names referencing the original template from a decorator, the layer index and the
+     * template name follows it: {@code _layer_1_/test1/actorname.hbs} is resolved in the layers before index 1.
+     */
+    private static final Pattern LAYER = Pattern.compile("_layer_(\\d+)_/(.*)");
+
+    private final List<Path> roots = new ArrayList<>();
+
+    private final List<FileSystem> fileSystems = new ArrayList<>();
+
+    /**
+     * @param uris {@code file:} URIs of directories and {@code jar:} URIs of archive directories in layer order
+     */
+    public PathTemplateLoader(Collection<URI> uris) throws IOException {
+        setSuffix("");
+        Map<Path, FileSystem> archives = new HashMap<>();
+        try {
+            for (URI uri : uris) {
+                Path root;
+                if (JAR_SCHEME.equals(uri.getScheme())) {
+                    Path archive = getArchive(uri);
+                    FileSystem fileSystem = archives.get(archive);
+                    if (fileSystem == null) {
+                        fileSystem = FileSystems.newFileSystem(archive, (ClassLoader) null);
+                        archives.put(archive, fileSystem);
+                        fileSystems.add(fileSystem);
+                    }
+                    root = fileSystem.getPath("/" + getArchivePath(uri));
+                } else {
+                    root = Paths.get(uri);
+                }
+                if (!Files.isDirectory(root)) {
+                    throw new FileNotFoundException("Template directory does not exist: " + uri);
+                }
+                roots.add(root);
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Returns true when one of the URIs is an archive directory, which can not be loaded by
+     * {@link hu.blackbelt.judo.generator.commons.ChainedURLTemplateLoader}.
+     */
+    public static boolean hasArchive(Collection<URI> uris) {
+        return uris.stream().anyMatch(u -> JAR_SCHEME.equals(u.getScheme()));
+    }
+
+    /**
+     * Returns the {@code jar:} URI of the directory of the archive.
+     */
+    public static URI getArchiveUri(Path archive, String path) {
+        String directory = path.startsWith("/") ? path.substring(1) : path;
+        if (!directory.isEmpty() && !directory.endsWith("/")) {
+            directory = directory + "/";
+        }
+        return URI.create(JAR_SCHEME + ":" + archive.toAbsolutePath().toUri() + ARCHIVE_SEPARATOR + directory);
+    }
+
+    /**
+     * Returns the archive file of the {@code jar:} URI.
+     */
+    static Path getArchive(URI uri) {
+        String spec = uri.getRawSchemeSpecificPart();
+        int separator = spec.indexOf(ARCHIVE_SEPARATOR);
+        return Paths.get(URI.create(separator >= 0 ? spec.substring(0, separator) : spec));
+    }
+
+    private static String getArchivePath(URI uri) {
+        String spec = uri.getSchemeSpecificPart();
+        int separator = spec.indexOf(ARCHIVE_SEPARATOR);
+        return separator >= 0 ? spec.substring(separator + ARCHIVE_SEPARATOR.length()) : "";
+    }
+
+    @Override
+    public TemplateSource sourceAt(String location) throws IOException {
+        String name = normalize(resolve(normalize(location)));
+        int layers = roots.size();
+        Matcher layer = LAYER.matcher(name);
+        String templateName = name;
+        if (layer.matches()) {
+            layers = Integer.parseInt(layer.group(1));
+            templateName = layer.group(2);
+        }
+        String overrideName = getOverrideName(templateName);
+        for (int i = layers - 1; i >= 0; i--) {
+            Path override = roots.get(i).resolve(overrideName);
+            if (Files.isRegularFile(override)) {
+                return new PathTemplateSource(name, override, templateName, "_layer_" + i + "_/" + templateName);
+            }
+            Path template = roots.get(i).resolve(templateName);
+            if (Files.isRegularFile(template)) {
+                return new PathTemplateSource(name, template, null, null);
+            }
+        }
+        throw new FileNotFoundException(name);
+    }
+
+    /**
+     * Returns the URL of the template in the last layer containing it, or null when it is not found. The URL of an
+     * archive entry is read from the zip file system.
+     */
+    @Override
+    public URL getResource(String location) throws IOException {
+        String name = normalize(location);
+        for (int i = roots.size() - 1; i >= 0; i--) {
+            Path path = roots.get(i).resolve(name);
+            if (Files.isRegularFile(path)) {
+                return toURL(path);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the URL of the location in the last layer, reading a missing location throws FileNotFoundException.
+     */
+    URL getLastLayerResource(String location) throws IOException {
+        return toURL(roots.get(roots.size() - 1).resolve(normalize(location)));
+    }
+
+    @Override
+    public void close() throws IOException {
+        IOException exception = null;
+        for (FileSystem fileSystem : fileSystems) {
+            try {
+                fileSystem.close();
+            } catch (IOException e) {
+                exception = e;
+            }
+        }
+        fileSystems.clear();
+        if (exception != null) {
+            throw exception;
+        }
+    }
+
+    private static String getOverrideName(String name) {
+        int slash = name.lastIndexOf('/');
+        int dot = name.lastIndexOf('.');
+        return dot > slash ? name.substring(0, dot) + OVERRIDE + name.substring(dot) : name + OVERRIDE;
+    }
+
+    private static URL toURL(Path path) throws IOException {
+        if (path.getFileSystem() == FileSystems.getDefault()) {
+            return path.toUri().toURL();
+        }
+        return new URL(null, path.toUri().toString(), new URLStreamHandler() {
+            @Override
+            protected URLConnection openConnection(URL url) {
+                return new URLConnection(url) {
+                    @Override
+                    public void connect() {
+                    }
+
+                    @Override
+                    public InputStream getInputStream() throws IOException {
+                        try {
+                            return Files.newInputStream(path);
+                        } catch (NoSuchFileException e) {
+                            throw new FileNotFoundException(path.toUri().toString());
+                        }
+                    }
+
+                    @Override
+                    public long getLastModified() {
+                        try {
+                            return Files.getLastModifiedTime(path).toMillis();
+                        } catch (IOException e) {
+                            return 0;
+                        }
+                    }
+                };
+            }
+        });
+    }
+
+    private static final class PathTemplateSource extends AbstractTemplateSource {
+        private final String filename;
+        private final Path path;
+        private final String originalName;
+        private final String originalPartial;
+
+        /**
+         * @param originalName    name of the decorated template, the partials of this name are replaced by
+         *                        originalPartial, it is null when the template is not a decorator
+         * @param originalPartial partial name of the decorated template in the layers before the decorator
+         */
+        private PathTemplateSource(String filename, Path path, String originalName, String originalPartial) {
+            this.filename = filename;
+            this.path = path;
+            this.originalName = originalName;
+            this.originalPartial = originalPartial;
+        }
+
+        @Override
+        public String content(Charset charset) throws IOException {
+            String content = new String(Files.readAllBytes(path), charset);
+            if (originalName == null) {
+                return content;
+            }
+            Matcher partial = Pattern.compile("(\\{\\{~?\\s*#?>\\s*)/?" + Pattern.quote(originalName) + "(?=[\\s}~])")
+                    .matcher(content);
+            return partial.replaceAll("$1" + Matcher.quoteReplacement(originalPartial));
+        }
+
+        @Override
+        public String filename() {
+            return filename;
+        }
+
+        @Override
+        public long lastModified() {
+            try {
+                return Files.getLastModifiedTime(path).toMillis();
+            } catch (IOException e) {
+                return -1;
+            }
+        }
+    }
+}
@@ -3,7 +3,6 @@ package hu.blackbelt.judo.psm.generator.engine;
 import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.ValueResolver;
 import com.github.jknack.handlebars.io.URLTemplateLoader;
-import com.google.common.base.Charsets;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.io.ByteStreams;
 import hu.blackbelt.epsilon.runtime.execution.api.Log;
@@ -14,20 +13,18 @@ import hu.blackbelt.judo.meta.psm.namespace.Model;
 import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
 import lombok.*;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.expression.spel.SpelCompilerMode;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.*;
-import java.lang.reflect.Method;
-import java.lang.reflect.Modifier;
 import java.net.URI;
 import java.net.URL;
+import java.nio.file.Path;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.*;
 import java.util.stream.Collectors;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * This class loads descriptor yaml file and processing it.
@@ -47,6 +44,7 @@ public class PsmGenerator {
     public static final String ACTOR_TYPES = "actorTypes";
     public static final String ACTOR_TYPE = "actorType";
     public static final String MODEL = "model";
+    public static final String MODEL_INDEX = "modelIndex";
 
 
     public static PsmGeneratorResult execute(PsmGeneratorParameter.PsmGeneratorParameterBuilder builder) throws Exception {
@@ -70,6 +68,19 @@ public class PsmGenerator {
     }
 
     private static PsmGeneratorResult execute(PsmGeneratorParameter parameter, Log log) throws InterruptedException, ExecutionException {
+        return execute(parameter, parameter.generatedFileSink, log);
+    }
+
+    private static PsmGeneratorResult execute(PsmGeneratorParameter parameter, BiConsumer<ActorType, GeneratedFile> sink, Log log) throws InterruptedException, ExecutionException {
+        try (GeneratorExecutor generatorExecutor = GeneratorExecutor.create(parameter.executorMode, parameter.parallelism)) {
+            return execute(parameter, sink, generatorExecutor.getExecutor(), log);
+        }
+    }
+
+    private static PsmGeneratorResult execute(PsmGeneratorParameter parameter, BiConsumer<ActorType, GeneratedFile> sink, Executor executor, Log log) throws InterruptedException, ExecutionException {
+        long startTime = System.nanoTime();
+        GenerationListener listener = parameter.generationListener;
+        listener.contextCreated(parameter.generatorContext, parameter.generatorContext.getCreationNanos());
         PsmGeneratorResult result = PsmGeneratorResult.psmGeneratorResult().build();
 
         parameter.generatorContext.getModelResourceSupport().getStreamOfPsmAccesspointActorType().forEach(
@@ -81,48 +92,65 @@ public class PsmGenerator {
         Model model = parameter.generatorContext.getModelResourceSupport().getStreamOfPsmNamespaceModel().findFirst()
                 .orElseThrow(() -> new RuntimeException("Could not find the model entry"));
 
-        List<CompletableFuture<GeneratedFile>> tasks = new ArrayList<>();
+        // The model is walked by the index on its first access only
+        ModelIndex index = parameter.generatorContext.createModelIndex();
+
+        // The extra variables are read once, all the generated files are sharing them. The context accessor
+        // receives the supplied map itself, the expressions and templates use its snapshot without null values.
+        Map<String, ?> suppliedVariables = parameter.extraContextVariables.get();
+        Map<String, Object> extraVariables = snapshotExtraVariables(suppliedVariables);
+
+        Map<String, Object> runParameters = new HashMap<>();
+        runParameters.put(ADD_DEBUG_TO_TEMPLATE, CLIENT_TEMPLATE_DEBUG);
+        runParameters.put(ACTOR_TYPES, actorTypes);
+        runParameters.put(MODEL, model);
+        runParameters.put(MODEL_INDEX, index);
+        runParameters.putAll(extraVariables);
+
+        StandardEvaluationContext runEvaluationContext = parameter.generatorContext.createSpringEvaluationContext();
+        runEvaluationContext.setVariable(ADD_DEBUG_TO_TEMPLATE, CLIENT_TEMPLATE_DEBUG);
+        runEvaluationContext.setVariable(ACTOR_TYPES, actorTypes);
+        runEvaluationContext.setVariable(MODEL, model);
+        runEvaluationContext.setVariable(MODEL_INDEX, index);
+        extraVariables.forEach(runEvaluationContext::setVariable);
+
+        final IncrementalGenerationState incrementalState = parameter.incrementalStateDirectory != null
+                ? IncrementalGenerationState.load(parameter.incrementalStateDirectory, parameter.generatorContext, extraVariables, actorTypes)
+                : null;
+
+        GenerationPipeline pipeline = new GenerationPipeline(executor, getMaxInFlight(parameter));
+        List<TemplateEvaluator> templateEvaluators = new ArrayList<>();
 
         parameter.generatorContext.getGeneratorModel().getTemplates().stream().forEach(generatorTemplate -> {
 
             // Handlebars context builder
             // It creates parameters accessible within templates.
             // It returns the function, the context creation itself is called when template is processed.
+            // The element specific parameters are layered over the shared run parameters.
             Function<Object, Context.Builder> defaultHandlebarsContextBuilder = o -> {
-                ImmutableMap.Builder params = ImmutableMap.<String, Object>builder()
-                    .put(ADD_DEBUG_TO_TEMPLATE, CLIENT_TEMPLATE_DEBUG)
-                    .put(ACTOR_TYPES, actorTypes)
-                    .put(TEMPLATE, generatorTemplate)
-                    .put(SELF, o)
-                    .put(MODEL, model);
-
-                Map<String, ?> extraVariables = parameter.extraContextVariables.get();
-                extraVariables.forEach((k, v) -> {
-                    if (k != null && v != null) {
-                        params.put(k, v);
-                    }
-                });
-
-                Context.Builder contextBuilder = Context.newBuilder(params.build());
-                if (parameter.generatorContext.getValueResolvers().size() > 0) {
+                Map<String, Object> params = new HashMap<>(4);
+                params.put(TEMPLATE, generatorTemplate);
+                params.put(SELF, o);
+
+                Context.Builder contextBuilder = Context.newBuilder(new LayeredMap(params, runParameters));
+                if (incrementalState != null) {
+                    contextBuilder.resolver(ModelReadTracker.trackingValueResolvers(parameter.generatorContext.getValueResolvers()));
+                } else if (parameter.generatorContext.getValueResolvers().size() > 0) {
                     contextBuilder.push(parameter.generatorContext.getValueResolvers().toArray(ValueResolver[]::new));
                 }
                 return contextBuilder;
             };
 
             // SpringEL Context builder
+            // The element specific variables are layered over the shared run variables.
             Function<Object, StandardEvaluationContext> defaultSpringELContextProvider = o -> {
-                StandardEvaluationContext templateContext = parameter.generatorContext.createSpringEvaluationContext();
-                templateContext.setVariable(ADD_DEBUG_TO_TEMPLATE, CLIENT_TEMPLATE_DEBUG);
-                templateContext.setVariable(ACTOR_TYPES, actorTypes);
+                StandardEvaluationContext templateContext = new LayeredEvaluationContext(runEvaluationContext);
+                if (incrementalState != null) {
+                    templateContext.addPropertyAccessor(ModelReadTracker.trackingPropertyAccessor());
+                    templateContext.setMethodResolvers(ModelReadTracker.trackingMethodResolvers(templateContext.getMethodResolvers()));
+                }
                 templateContext.setVariable(TEMPLATE, generatorTemplate);
                 templateContext.setVariable(SELF, o);
-                templateContext.setVariable(MODEL, model);
-
-                Map<String, ?> extraVariables = parameter.extraContextVariables.get();
-                extraVariables.forEach((k, v) -> {
-                    templateContext.setVariable(k, v);
-                });
                 return templateContext;
             };
 
@@ -134,31 +162,47 @@ public class PsmGenerator {
             } catch (IOException e) {
                 throw new RuntimeException("Could not evaluate template", e);
             }
+            templateEvaluators.add(templateEvaulator);
+            listener.templatePrepared(generatorTemplate, templateEvaulator.getPreparationNanos());
 
             if (generatorTemplate.isActorTypeBased()) {
                 actorTypes.forEach(actorType -> {
                     evaulationContext.setVariable(ACTOR_TYPE, actorType);
 
+                    long factoryStartTime = System.nanoTime();
                     Collection processingList = new HashSet(Arrays.asList(actorType));
                     if (templateEvaulator.getFactoryExpression() != null) {
                         processingList = templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, actorType, Collection.class);
                     }
-                    templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, processingList, Collection.class).stream().forEach(element -> {
-                        tasks.add(CompletableFuture.supplyAsync(() -> {
-                            StandardEvaluationContext templateContext = defaultSpringELContextProvider.apply(element);
-                            templateContext.setVariable(ACTOR_TYPE, actorType);
-
-                            Context.Builder contextBuilder = defaultHandlebarsContextBuilder.apply(element)
-                                    .combine(ACTOR_TYPE, actorType);
-
-                            callBindContextForTypeIfCan(parameter.generatorContext, StandardEvaluationContext.class, templateContext);
-                            callBindContextForTypeIfCan(parameter.generatorContext, Map.class, parameter.extraContextVariables.get());
-
-                            generatorTemplate.evalToContextBuilder(templateEvaulator, contextBuilder, templateContext);
-                            GeneratedFile generatedFile = generateFile(parameter.generatorContext, templateContext, templateEvaulator, generatorTemplate, contextBuilder, log);
+                    Collection elements = templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, processingList, Collection.class);
+                    listener.factoryEvaluated(generatorTemplate, actorType, elements.size(), System.nanoTime() - factoryStartTime);
+                    elements.stream().forEach(element -> {
+                        pipeline.submit(() -> {
+                            Supplier<GeneratedFile> renderer = () -> {
+                                StandardEvaluationContext templateContext = defaultSpringELContextProvider.apply(element);
+                                templateContext.setVariable(ACTOR_TYPE, actorType);
+
+                                Context.Builder contextBuilder = defaultHandlebarsContextBuilder.apply(element)
+                                        .combine(ACTOR_TYPE, actorType);
+
+                                parameter.generatorContext.bindContext(StandardEvaluationContext.class, templateContext);
+                                parameter.generatorContext.bindContext(Map.class, suppliedVariables);
+
+                                generatorTemplate.evalToContextBuilder(templateEvaulator, contextBuilder, templateContext, actorType);
+                                return generateFile(parameter.generatorContext, templateContext, templateEvaulator, generatorTemplate, contextBuilder, log);
+                            };
+                            long renderStartTime = System.nanoTime();
+                            GeneratedFile generatedFile = incrementalState != null
+                                    ? incrementalState.generate(generatorTemplate, element, actorType, renderer)
+                                    : renderer.get();
+                            listener.fileRendered(generatorTemplate, generatedFile, System.nanoTime() - renderStartTime);
+                            if (sink != null) {
+                                sink.accept(actorType, generatedFile);
+                                return null;
+                            }
                             result.generatedByActors.get(actorType).add(generatedFile);
                             return generatedFile;
-                        }));
+                        });
                     });
                 });
             } else {
@@ -168,29 +212,86 @@ public class PsmGenerator {
                 if (templateEvaulator.getTemplate() != null) {
                     iterableCollection = actorTypes;
                 }
-                templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, iterableCollection, Collection.class).stream().forEach(element -> {
-                    tasks.add(CompletableFuture.supplyAsync(() -> {
-
-                        StandardEvaluationContext templateContext = defaultSpringELContextProvider.apply(element);
-                        Context.Builder contextBuilder = defaultHandlebarsContextBuilder.apply(element);
-
-                        callBindContextForTypeIfCan(parameter.generatorContext, StandardEvaluationContext.class, templateContext);
-                        callBindContextForTypeIfCan(parameter.generatorContext, Map.class, parameter.extraContextVariables.get());
-
-                        generatorTemplate.evalToContextBuilder(templateEvaulator, contextBuilder, evaulationContext);
-                        GeneratedFile generatedFile = generateFile(parameter.generatorContext, templateContext, templateEvaulator, generatorTemplate, contextBuilder, log);
+                long factoryStartTime = System.nanoTime();
+                Collection elements = templateEvaulator.getFactoryExpressionResultOrValue(generatorTemplate, iterableCollection, Collection.class);
+                listener.factoryEvaluated(generatorTemplate, null, elements.size(), System.nanoTime() - factoryStartTime);
+                elements.stream().forEach(element -> {
+                    pipeline.submit(() -> {
+                        Supplier<GeneratedFile> renderer = () -> {
+                            StandardEvaluationContext templateContext = defaultSpringELContextProvider.apply(element);
+                            Context.Builder contextBuilder = defaultHandlebarsContextBuilder.apply(element);
+
+                            parameter.generatorContext.bindContext(StandardEvaluationContext.class, templateContext);
+                            parameter.generatorContext.bindContext(Map.class, suppliedVariables);
+
+                            generatorTemplate.evalToContextBuilder(templateEvaulator, contextBuilder, evaulationContext);
+                            return generateFile(parameter.generatorContext, templateContext, templateEvaulator, generatorTemplate, contextBuilder, log);
+                        };
+                        long renderStartTime = System.nanoTime();
+                        GeneratedFile generatedFile = incrementalState != null
+                                ? incrementalState.generate(generatorTemplate, element, null, renderer)
+                                : renderer.get();
+                        listener.fileRendered(generatorTemplate, generatedFile, System.nanoTime() - renderStartTime);
+                        if (sink != null) {
+                            sink.accept(null, generatedFile);
+                            return null;
+                        }
                         result.generated.add(generatedFile);
                         return generatedFile;
-                    }));
+                    });
                 });
             }
         });
 
-        StreamHelper.performFutures(tasks);
+        pipeline.await();
+        listener.generationFinished(System.nanoTime() - startTime);
+
+        if (parameter.generatorContext.getExpressionCompilerMode() != SpelCompilerMode.OFF) {
+            int expressions = templateEvaluators.stream()
+                    .mapToInt(t -> t.getTemplateExpressions().size() + (t.getFactoryExpression() != null ? 2 : 1)).sum();
+            int compiled = templateEvaluators.stream().mapToInt(TemplateEvaluator::logCompiledExpressions).sum();
+            log.info("SpringEL expressions compiled (" + parameter.generatorContext.getExpressionCompilerMode() + "): "
+                    + compiled + " of " + expressions);
+        }
+
+        if (incrementalState != null) {
+            try {
+                incrementalState.save();
+            } catch (IOException e) {
+                log.error("Could not save incremental generation state: " + parameter.incrementalStateDirectory.getAbsolutePath(), e);
+            }
+            log.info("Incremental generation - reused: " + incrementalState.getReused() + ", rendered: " + incrementalState.getRendered());
+        }
         return result;
     }
 
 
+    private static int getMaxInFlight(PsmGeneratorParameter parameter) {
+        if (parameter.maxInFlight > 0) {
+            return parameter.maxInFlight;
+        } else if (parameter.maxInFlight < 0) {
+            return Integer.MAX_VALUE;
+        }
+        int parallelism = parameter.parallelism > 0 ? parameter.parallelism : Runtime.getRuntime().availableProcessors();
+        return 4 * parallelism;
+    }
+
+    /**
+     * Copies the extra variables to an immutable map. The variables without name or value are dropped, they could not
+     * be referenced from the templates.
+     */
+    private static Map<String, Object> snapshotExtraVariables(Map<String, ?> extraContextVariables) {
+        ImmutableMap.Builder<String, Object> extraVariables = ImmutableMap.builder();
+        if (extraContextVariables != null) {
+            extraContextVariables.forEach((k, v) -> {
+                if (k != null && v != null) {
+                    extraVariables.put(k, v);
+                }
+            });
+        }
+        return extraVariables.build();
+    }
+
     private static GeneratedFile generateFile(
             final PsmGeneratorContext generatorContext,
             final StandardEvaluationContext evaluationContext,
@@ -202,7 +303,7 @@ public class PsmGenerator {
         GeneratedFile generatedFile = new GeneratedFile();
 
         try {
-            generatedFile.setPath(templateEvaulator.getPathExpression().getValue(evaluationContext, String.class));
+            generatedFile.setPath(templateEvaulator.evaluate(templateEvaulator.getPathExpression(), evaluationContext, String.class));
         } catch (Exception e) {
             throw new IllegalArgumentException("Could not evaluate path expression in " + generatorTemplate.toString());
         }
@@ -217,7 +318,9 @@ public class PsmGenerator {
             try {
                 URL resource = generatorContext.getUrlResolver().getResource(location);
                 if (resource != null) {
-                    generatedFile.setContent(ByteStreams.toByteArray(resource.openStream()));
+                    try (InputStream inputStream = resource.openStream()) {
+                        generatedFile.setContent(ByteStreams.toByteArray(inputStream));
+                    }
                 }  else {
                     log.error("Could not locate: " + location);
                 }
@@ -225,62 +328,80 @@ public class PsmGenerator {
                 log.error("Could not resolve: " + location);
             }
         } else {
-            StringWriter sourceFile = new StringWriter();
+            RenderBuffer renderBuffer = RenderBuffer.acquire();
             try {
                 Context context = contextBuilder.build();
-                callBindContextForTypeIfCan(generatorContext, Context.class, context);
-                templateEvaulator.getTemplate().apply(context, sourceFile);
+                generatorContext.bindContext(Context.class, context);
+                templateEvaulator.getTemplate().apply(context, renderBuffer.getWriter());
+                generatedFile.setContent(renderBuffer.toContent());
             } catch (Exception e) {
+                // The encoder of a failed render can hold partial state, so the buffer is not reused.
+                renderBuffer = null;
                 throw new RuntimeException("Could not generate file: " + generatedFile.getPath(), e);
+            } finally {
+                if (renderBuffer != null) {
+                    renderBuffer.release();
+                }
             }
-            generatedFile.setContent(sourceFile.toString().getBytes(Charsets.UTF_8));
         }
         return generatedFile;
     }
 
     public static Consumer<Map.Entry<ActorType, Collection<GeneratedFile>>> getDirectoryWriterForActor(Function<ActorType, File> actorTypeTargetDirectoryResolver, Log log) {
+        return getDirectoryWriterForActor(actorTypeTargetDirectoryResolver, new GeneratedFileWriter(false, log));
+    }
+
+    public static Consumer<Map.Entry<ActorType, Collection<GeneratedFile>>> getDirectoryWriterForActor(Function<ActorType, File> actorTypeTargetDirectoryResolver, GeneratedFileWriter writer) {
         return e -> {
             File targetDirectory = actorTypeTargetDirectoryResolver.apply(e.getKey());
-            GeneratorIgnore generatorIgnore = new GeneratorIgnore(targetDirectory.toPath());
-            e.getValue().stream().forEach(f -> {
-                File outFile = new File(targetDirectory, f.getPath());
-                outFile.getParentFile().mkdirs();
-                if (!generatorIgnore.shouldExcludeFile(outFile.toPath())) {
-                    try {
-                        ByteStreams.copy(new ByteArrayInputStream(f.getContent()), new FileOutputStream(outFile));
-                    } catch (Exception exception) {
-                        log.error("Could not write file: " + outFile.getAbsolutePath(), exception);
-                    }
-                }
-            });
+            e.getValue().stream().forEach(f -> writer.write(targetDirectory, f));
         };
     }
 
     public static Consumer<Collection<GeneratedFile>> getDirectoryWriter(Supplier<File> targetDirectoryResolver, Log log) {
+        return getDirectoryWriter(targetDirectoryResolver, new GeneratedFileWriter(false, log));
+    }
+
+    public static Consumer<Collection<GeneratedFile>> getDirectoryWriter(Supplier<File> targetDirectoryResolver, GeneratedFileWriter writer) {
         return e -> {
             File targetDirectory = targetDirectoryResolver.get();
-            GeneratorIgnore generatorIgnore = new GeneratorIgnore(targetDirectory.toPath());
-            e.stream().forEach(f -> {
-                File outFile = new File(targetDirectory, f.getPath());
-                outFile.getParentFile().mkdirs();
-                if (!generatorIgnore.shouldExcludeFile(outFile.toPath())) {
-                    try {
-                        ByteStreams.copy(new ByteArrayInputStream(f.getContent()), new FileOutputStream(outFile));
-                    } catch (Exception exception) {
-                        log.error("Could not write file: " + outFile.getAbsolutePath(), exception);
-                    }
-                }
-            });
+            e.stream().forEach(f -> writer.write(targetDirectory, f));
+        };
+    }
 
+    /**
+     * Creates a thread safe writer which can be used as {@link PsmGeneratorParameter#generatedFileSink}. Actor type
+     * based files are written to the directory resolved by actorTypeTargetDirectoryResolver, the others are written to
+     * the directory given by targetDirectoryResolver.
+     */
+    public static BiConsumer<ActorType, GeneratedFile> getStreamingDirectoryWriter(Function<ActorType, File> actorTypeTargetDirectoryResolver,
+                                                                                  Supplier<File> targetDirectoryResolver,
+                                                                                  GeneratedFileWriter writer) {
+        return (actorType, f) -> {
+            File targetDirectory = actorType != null
+                    ? actorTypeTargetDirectoryResolver.apply(actorType)
+                    : targetDirectoryResolver.get();
+            writer.write(targetDirectory, f);
         };
     }
 
 
-    public static void generateToDirectory(PsmGeneratorParameter.PsmGeneratorParameterBuilder builder) throws Exception {
-        generateToDirectory(builder.build());
+    public static GeneratedFileWriter.Statistics generateToDirectory(PsmGeneratorParameter.PsmGeneratorParameterBuilder builder) throws Exception {
+        return generateToDirectory(builder.build());
     }
 
-    public static void generateToDirectory(PsmGeneratorParameter parameter) throws Exception {
+    public static GeneratedFileWriter.Statistics generateToDirectory(PsmGeneratorParameter parameter) throws Exception {
+        return generateToDirectory(parameter, null);
+    }
+
+    /**
+     * Generates to directory with a writer sharing the manifests of the given writer, so more generations can write
+     * into the same directory at the same time, see
+     * {@link GeneratedFileWriter#GeneratedFileWriter(GeneratedFileWriter, Log, GenerationListener)}. The writeIfChanged
+     * and manifestDirectory of the shared writer are used. When sharedWriter is null, it is same as
+     * {@link #generateToDirectory(PsmGeneratorParameter)}.
+     */
+    public static GeneratedFileWriter.Statistics generateToDirectory(PsmGeneratorParameter parameter, GeneratedFileWriter sharedWriter) throws Exception {
         final AtomicBoolean loggerToBeClosed = new AtomicBoolean(false);
         Log log = Objects.requireNonNullElseGet(parameter.log,
                                                 () -> {
@@ -288,14 +409,23 @@ public class PsmGenerator {
                                                     return new BufferedSlf4jLogger(PsmGenerator.log);
                                                 });
 
-        try {
-            PsmGeneratorResult result = execute(parameter);
+        try (GeneratorExecutor generatorExecutor = GeneratorExecutor.create(parameter.executorMode, parameter.parallelism);
+             GeneratedFileWriter writer = sharedWriter != null
+                     ? new GeneratedFileWriter(sharedWriter, log, parameter.generationListener)
+                     : new GeneratedFileWriter(parameter.writeIfChanged, parameter.manifestDirectory, log, parameter.generationListener)) {
+            Executor executor = generatorExecutor.getExecutor();
+            if (parameter.streaming) {
+                execute(parameter, getStreamingDirectoryWriter(parameter.actorTypeTargetDirectoryResolver, parameter.targetDirectoryResolver, writer), executor, log);
+                return writer.getStatistics();
+            }
+            PsmGeneratorResult result = execute(parameter, null, executor, log);
             result.generatedByActors
                     .entrySet()
                     .stream()
                     .filter(e -> parameter.actorTypePredicate.test(e.getKey()))
-                    .forEach(getDirectoryWriterForActor(parameter.actorTypeTargetDirectoryResolver, log));
-            getDirectoryWriter(parameter.targetDirectoryResolver, log).accept(result.generated);
+                    .forEach(e -> writer.writeAll(parameter.actorTypeTargetDirectoryResolver.apply(e.getKey()), e.getValue(), executor));
+            writer.writeAll(parameter.targetDirectoryResolver.get(), result.generated, executor);
+            return writer.getStatistics();
         } finally {
             if (loggerToBeClosed.get()) {
                 log.close();
@@ -303,21 +433,27 @@ public class PsmGenerator {
         }
     }
 
+    /**
+     * Returns the generated files as ZIP archive held in memory. The entries are in the order of the given collection.
+     * Use {@link #writeGeneratedFilesAsZip(Collection, OutputStream, ZipExportParameter)} to stream the archive.
+     */
     @SneakyThrows(IOException.class)
     public static InputStream getGeneratedFilesAsZip(Collection<GeneratedFile> generatedFiles) {
         ByteArrayOutputStream generatedZip = new ByteArrayOutputStream();
-        ZipOutputStream zipOutputStream = new ZipOutputStream(generatedZip);
-        for (GeneratedFile generatedFile : generatedFiles) {
-            zipOutputStream.putNextEntry(new ZipEntry(generatedFile.getPath()));
-            zipOutputStream.write(generatedFile.getContent(), 0, generatedFile.getContent().length);
-            zipOutputStream.flush();
-            zipOutputStream.closeEntry();
-        }
-        zipOutputStream.flush();
-        zipOutputStream.close();
+        GeneratedZipWriter.write(generatedFiles, generatedZip, ZipExportParameter.zipExportParameter()
+                .sortEntries(false)
+                .build());
         return new ByteArrayInputStream(generatedZip.toByteArray());
     }
 
+    public static void writeGeneratedFilesAsZip(Collection<GeneratedFile> generatedFiles, OutputStream outputStream, ZipExportParameter zipExportParameter) throws IOException {
+        GeneratedZipWriter.write(generatedFiles, outputStream, zipExportParameter);
+    }
+
+    public static void writeGeneratedFilesAsZip(Collection<GeneratedFile> generatedFiles, Path target, ZipExportParameter zipExportParameter) throws IOException {
+        GeneratedZipWriter.write(generatedFiles, target, zipExportParameter);
+    }
+
 
     @Builder
     @Getter
@@ -336,6 +472,8 @@ public class PsmGenerator {
         Function<Collection<URI>, URLTemplateLoader> urlTemplateLoaderFactory = null;
         @Builder.Default
         Function<Collection<URI>, URLResolver> urlResolverFactory = null;
+        @Builder.Default
+        SpelCompilerMode expressionCompilerMode = null;
     }
 
     public static PsmGeneratorContext createGeneratorContext(CreateGeneratorContextArgument args) throws IOException {
@@ -350,6 +488,14 @@ public class PsmGenerator {
             } else {
                 throw new IllegalStateException("Could not determinate URLResolver");
             }
+        } else if (PathTemplateLoader.hasArchive(args.uris.values())) {
+            // The archives stay open while the loader is used, the factories can be set to close them explicitly
+            urlTemplateLoader = new PathTemplateLoader(args.uris.values());
+            if (args.urlResolverFactory != null) {
+                urlResolver = args.urlResolverFactory.apply(args.uris.values());
+            } else {
+                urlResolver = (URLResolver) urlTemplateLoader;
+            }
         } else {
             urlTemplateLoader = ChainedURLTemplateLoader.createFromURIs(args.uris.values());
             if (args.urlResolverFactory != null) {
@@ -364,22 +510,7 @@ public class PsmGenerator {
         }
 
 
-        GeneratorModel generatorModel = null;
-
-        Map.Entry<String, URI> root = args.uris.entrySet().stream().findFirst()
-                .orElseThrow(() -> new IllegalArgumentException("No template URI is defined"));
-
-        for (Map.Entry<String, URI> entry : args.uris.entrySet()) {
-            GeneratorModel model = GeneratorModel.loadYamlURL(entry.getKey(),
-                    UriHelper.calculateRelativeURI(entry.getValue(), args.descriptorName + YAML).normalize().toURL());
-            if (entry == root) {
-                generatorModel = model;
-            } else {
-                if (model != null && generatorModel != null) {
-                    generatorModel.overrideTemplates(model.getTemplates());
-                }
-            }
-        }
+        GeneratorModel generatorModel = loadGeneratorModel(args.uris, args.descriptorName);
 
         List<ValueResolver> valueResolversPar = new ArrayList<>();
         for (Class helper : args.helpers) {
@@ -411,25 +542,76 @@ public class PsmGenerator {
                 .helpers(helpersPar)
                 .valueResolvers(valueResolversPar)
                 .contextAccessor(args.contextAccessor)
+                .templateUris(new ArrayList<>(args.uris.values()))
+                .expressionCompilerMode(args.expressionCompilerMode)
                 .build();
 
         return psmGeneratorContext;
     }
 
+    /**
+     * Creates generator contexts for the given descriptors of the same templates. The descriptorName of args is not
+     * used. The first context is created as {@link #createGeneratorContext(CreateGeneratorContextArgument)} does,
+     * the others share its model, helpers and Handlebars, see
+     * {@link PsmGeneratorContext#forGeneratorModel(GeneratorModel, SpelCompilerMode)}.
+     *
+     * @return the contexts in the order of descriptor names
+     */
+    public static List<PsmGeneratorContext> createGeneratorContexts(CreateGeneratorContextArgument args,
+                                                                    List<String> descriptorNames) throws IOException {
+        if (descriptorNames.isEmpty()) {
+            throw new IllegalArgumentException("Minimum one descriptor is mandatory");
+        }
+        List<PsmGeneratorContext> contexts = new ArrayList<>();
+        contexts.add(createGeneratorContext(CreateGeneratorContextArgument.builder()
+                .psmModel(args.psmModel)
+                .descriptorName(descriptorNames.get(0))
+                .uris(args.uris)
+                .helpers(args.helpers)
+                .contextAccessor(args.contextAccessor)
+                .urlTemplateLoaderFactory(args.urlTemplateLoaderFactory)
+                .urlResolverFactory(args.urlResolverFactory)
+                .expressionCompilerMode(args.expressionCompilerMode)
+                .build()));
+        for (String descriptorName : descriptorNames.subList(1, descriptorNames.size())) {
+            contexts.add(contexts.get(0).forGeneratorModel(
+                    loadGeneratorModel(args.uris, descriptorName), args.expressionCompilerMode));
+        }
+        return contexts;
+    }
+
+    /**
+     * Loads the descriptor from the first template URI and applies the overrides of the others in order. The
+     * {@code jar:} URIs of archive directories are read by {@link PathTemplateLoader}.
+     */
+    static GeneratorModel loadGeneratorModel(LinkedHashMap<String, URI> uris, String descriptorName) throws IOException {
+        GeneratorModel generatorModel = null;
 
-    @SneakyThrows
-    private static void callBindContextForTypeIfCan(PsmGeneratorContext generatorContext, Class type, Object value) {
-        if (generatorContext.getContextAccessor() != null) {
-            Optional<Method> callMethod = Arrays.stream(generatorContext.getContextAccessor().getMethods()).filter(m ->
-                    m.getName().equals("bindContext") &&
-                            Modifier.isPublic(m.getModifiers()) &&
-                            Modifier.isStatic(m.getModifiers()) &&
-                            m.getParameters().length == 1 &&
-                            type.isAssignableFrom(m.getParameters()[0].getType())
-            ).findFirst();
-            if (callMethod.isPresent()) {
-                callMethod.get().invoke(null, value);
+        Map.Entry<String, URI> root = uris.entrySet().stream().findFirst()
+                .orElseThrow(() -> new IllegalArgumentException("No template URI is defined"));
+
+        for (Map.Entry<String, URI> entry : uris.entrySet()) {
+            GeneratorModel model;
+            if (PathTemplateLoader.JAR_SCHEME.equals(entry.getValue().getScheme())) {
+                // Read from the archive without extraction
+                try (PathTemplateLoader archive = new PathTemplateLoader(Collections.singletonList(entry.getValue()))) {
+                    model = GeneratorModel.loadYamlURL(entry.getKey(), archive.getLastLayerResource(descriptorName + YAML));
+                }
+            } else {
+                model = GeneratorModel.loadYamlURL(entry.getKey(),
+                        UriHelper.calculateRelativeURI(entry.getValue(), descriptorName + YAML).normalize().toURL());
+            }
+            if (entry == root) {
+                generatorModel = model;
+            } else {
+                if (model != null && generatorModel != null) {
+                    generatorModel.overrideTemplates(model.getTemplates());
+                    if (model.getExpressionCompilerMode() != null) {
+                        generatorModel.setExpressionCompilerMode(model.getExpressionCompilerMode());
+                    }
+                }
             }
         }
+        return generatorModel;
     }
 }
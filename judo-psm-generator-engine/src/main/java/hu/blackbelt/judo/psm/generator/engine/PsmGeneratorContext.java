@@ -1,5 +1,6 @@
 package hu.blackbelt.judo.psm.generator.engine;
 
+import com.github.jknack.handlebars.Context;
 import com.github.jknack.handlebars.Handlebars;
 import com.github.jknack.handlebars.Helper;
 import com.github.jknack.handlebars.ValueResolver;
@@ -15,13 +16,25 @@ import hu.blackbelt.judo.meta.psm.support.PsmModelResourceSupport;
 import lombok.Builder;
 import lombok.Getter;
 import lombok.NonNull;
+import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
+import org.eclipse.emf.ecore.EObject;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelParserConfiguration;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Collection;
+import java.net.URI;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * This class holds the state over a generation process. The individual generation for templates uses
@@ -50,9 +63,59 @@ public class PsmGeneratorContext {
     @Getter
     private final Class contextAccessor;
 
+    @Getter
+    private final PsmModel psmModel;
+
+    @Getter
+    private final Collection<URI> templateUris;
+
+    @Getter
+    private final SpelCompilerMode expressionCompilerMode;
+
+    /**
+     * Parser of factory, path and template context expressions. When compiler mode is not OFF, the expressions
+     * are compiled after their first evaluations.
+     */
+    @Getter
+    private final ExpressionParser expressionParser;
+
 
     TemplateCache templateCache = new HighConcurrencyTemplateCache();
 
+    /**
+     * Time spent to create the context in nanoseconds.
+     */
+    @Getter
+    private final long creationNanos;
+
+    /**
+     * Handlebars instance shared by all of the template evaluators. It is configured once on context creation and
+     * it is not modified after that, so it can be used from multiple threads.
+     */
+    @Getter
+    private final Handlebars handlebars;
+
+    /**
+     * SpringEL context holding the static methods of helpers as functions. It is built once, the evaluation contexts
+     * used in generation are layered over it, see {@link #createSpringEvaluationContext()}.
+     */
+    private final StandardEvaluationContext functionsEvaluationContext;
+
+    private static final MethodHandle NO_BIND_CONTEXT = MethodHandles.empty(MethodType.methodType(void.class, Object.class));
+
+    /**
+     * bindContext methods of context accessor keyed by the bound type. The types used by the generator are resolved
+     * on context creation, the missing methods are represented by a no-op handle.
+     */
+    private final Map<Class, MethodHandle> bindContextMethods;
+
+    /**
+     * Index of the model created by the last generation, shared with the contexts created by
+     * {@link #forGeneratorModel(GeneratorModel, SpelCompilerMode)}. Every generation creates a new one, see
+     * {@link #createModelIndex()}.
+     */
+    private final AtomicReference<ModelIndex> modelIndex;
+
 
     @Builder
     public PsmGeneratorContext(
@@ -62,9 +125,13 @@ public class PsmGeneratorContext {
             @NonNull GeneratorModel generatorModel,
             Collection<Class> helpers,
             Collection<ValueResolver> valueResolvers,
-            Class contextAccessor) {
+            Class contextAccessor,
+            Collection<URI> templateUris,
+            SpelCompilerMode expressionCompilerMode) {
 
+        long startTime = System.nanoTime();
         this.templateLoader = templateLoader;
+        this.psmModel = psmModel;
         modelResourceSupport = PsmModelResourceSupport.psmModelResourceSupportBuilder()
                 .resourceSet(psmModel.getResourceSet())
                 .build();
@@ -81,8 +148,73 @@ public class PsmGeneratorContext {
             this.valueResolvers = valueResolvers;
         }
         this.contextAccessor = contextAccessor;
+        if (templateUris == null) {
+            this.templateUris = new ArrayList<>();
+        } else {
+            this.templateUris = templateUris;
+        }
+        this.expressionCompilerMode = resolveExpressionCompilerMode(expressionCompilerMode, generatorModel);
+        this.expressionParser = new SpelExpressionParser(
+                new SpelParserConfiguration(this.expressionCompilerMode, Thread.currentThread().getContextClassLoader()));
+        this.handlebars = createHandlebars();
+        this.functionsEvaluationContext = createFunctionsEvaluationContext();
+        this.modelIndex = new AtomicReference<>();
+        this.bindContextMethods = new ConcurrentHashMap<>();
+        for (Class type : Arrays.asList(StandardEvaluationContext.class, Map.class, Context.class)) {
+            bindContextMethods.put(type, resolveBindContextMethod(type));
+        }
+        this.creationNanos = System.nanoTime() - startTime;
+        log.debug("Generator context created in {} ms ({} helpers, {} value resolvers)",
+                TimeUnit.NANOSECONDS.toMillis(creationNanos), this.helpers.size(), this.valueResolvers.size());
+    }
+
+    private PsmGeneratorContext(PsmGeneratorContext shared, GeneratorModel generatorModel, SpelCompilerMode expressionCompilerMode) {
+        long startTime = System.nanoTime();
+        this.templateLoader = shared.templateLoader;
+        this.urlResolver = shared.urlResolver;
+        this.modelResourceSupport = shared.modelResourceSupport;
+        this.generatorModel = generatorModel;
+        this.helpers = shared.helpers;
+        this.valueResolvers = shared.valueResolvers;
+        this.contextAccessor = shared.contextAccessor;
+        this.psmModel = shared.psmModel;
+        this.templateUris = shared.templateUris;
+        this.expressionCompilerMode = resolveExpressionCompilerMode(expressionCompilerMode, generatorModel);
+        this.expressionParser = this.expressionCompilerMode == shared.expressionCompilerMode
+                ? shared.expressionParser
+                : new SpelExpressionParser(new SpelParserConfiguration(this.expressionCompilerMode, Thread.currentThread().getContextClassLoader()));
+        this.templateCache = shared.templateCache;
+        this.handlebars = shared.handlebars;
+        this.functionsEvaluationContext = shared.functionsEvaluationContext;
+        this.bindContextMethods = shared.bindContextMethods;
+        this.modelIndex = shared.modelIndex;
+        this.creationNanos = System.nanoTime() - startTime;
     }
 
+    /**
+     * Creates a context for an other descriptor of the same template URIs. The model, helpers, template loader,
+     * Handlebars (with its compiled templates) and SpringEL functions are shared with this context, so the
+     * generations of the contexts can run at the same time.
+     *
+     * @param generatorModel the descriptor
+     * @param expressionCompilerMode the compiler mode overriding the one of the descriptor, can be null
+     */
+    public PsmGeneratorContext forGeneratorModel(@NonNull GeneratorModel generatorModel, SpelCompilerMode expressionCompilerMode) {
+        return new PsmGeneratorContext(this, generatorModel, expressionCompilerMode);
+    }
+
+    private static SpelCompilerMode resolveExpressionCompilerMode(SpelCompilerMode expressionCompilerMode, GeneratorModel generatorModel) {
+        if (expressionCompilerMode != null) {
+            return expressionCompilerMode;
+        } else if (generatorModel.getExpressionCompilerMode() != null) {
+            return generatorModel.getExpressionCompilerMode();
+        }
+        return SpelCompilerMode.OFF;
+    }
+
+    /**
+     * Creates a new configured Handlebars instance. The generation uses the shared one, see {@link #getHandlebars()}.
+     */
     public Handlebars createHandlebars() {
         Handlebars handlebars = new Handlebars();
         handlebars.with(templateLoader).with(templateCache);
@@ -93,6 +225,7 @@ public class PsmGeneratorContext {
         handlebars.setInfiniteLoops(true);
         handlebars.registerHelpers(StringHelpers.class);
 //        handlebars.registerHelpers(ActorTypeHelpers.class);
+
         for (Class clazz : helpers) {
             handlebars.registerHelpers(clazz);
         }
@@ -104,11 +237,80 @@ public class PsmGeneratorContext {
             }
             return accum;
         });
+
+        if (handlebars.helper("referencing") != null) {
+            log.warn("Helper 'referencing' of the helper classes is overridden by the built-in one");
+        }
+        handlebars.registerHelper("referencing", (Helper<EObject>) (element, options) -> {
+            Object runIndex = options.get(PsmGenerator.MODEL_INDEX, null);
+            ModelIndex index = runIndex instanceof ModelIndex ? (ModelIndex) runIndex : getModelIndex();
+            String referenceName = options.param(0, null);
+            return referenceName != null
+                    ? index.referencing(element, referenceName)
+                    : index.referencing(element);
+        });
         return handlebars;
     }
 
+    /**
+     * Creates the index of the current state of the model, the model is walked on the first access of it. It is
+     * called by every generation, so the changes of the model made between generations are indexed.
+     */
+    public ModelIndex createModelIndex() {
+        ModelIndex index = new ModelIndex(psmModel.getResourceSet());
+        modelIndex.set(index);
+        return index;
+    }
+
+    /**
+     * Returns the index created by the last generation, or creates one when there was no generation yet.
+     */
+    public ModelIndex getModelIndex() {
+        ModelIndex index = modelIndex.get();
+        return index != null ? index : createModelIndex();
+    }
+
+    /**
+     * Calls the public static bindContext method of context accessor which parameter is assignable from the given type.
+     * It does nothing when there is no context accessor or it has no such method.
+     */
+    @SneakyThrows
+    public void bindContext(Class type, Object value) {
+        MethodHandle bindContextMethod = bindContextMethods.computeIfAbsent(type, this::resolveBindContextMethod);
+        if (bindContextMethod != NO_BIND_CONTEXT) {
+            bindContextMethod.invokeExact(value);
+        }
+    }
+
+    @SneakyThrows(IllegalAccessException.class)
+    private MethodHandle resolveBindContextMethod(Class type) {
+        if (contextAccessor == null) {
+            return NO_BIND_CONTEXT;
+        }
+        Optional<Method> bindContextMethod = Arrays.stream(contextAccessor.getMethods()).filter(m ->
+                m.getName().equals("bindContext") &&
+                        Modifier.isPublic(m.getModifiers()) &&
+                        Modifier.isStatic(m.getModifiers()) &&
+                        m.getParameters().length == 1 &&
+                        type.isAssignableFrom(m.getParameters()[0].getType())
+        ).findFirst();
+        if (bindContextMethod.isEmpty()) {
+            return NO_BIND_CONTEXT;
+        }
+        return MethodHandles.publicLookup().unreflect(bindContextMethod.get())
+                .asType(MethodType.methodType(void.class, Object.class));
+    }
+
+    /**
+     * Creates an evaluation context where the helper functions are registered. The functions are not registered
+     * one by one, the returned context is layered over the shared function context.
+     */
     public StandardEvaluationContext createSpringEvaluationContext() {
-        StandardEvaluationContext springElContext = new StandardEvaluationContext();
+        return new LayeredEvaluationContext(functionsEvaluationContext);
+    }
+
+    private StandardEvaluationContext createFunctionsEvaluationContext() {
+        StandardEvaluationContext springElContext = LayeredEvaluationContext.createSharedRoot();
 
         for (Class helper : helpers) {
             Arrays.stream(helper.getMethods()).filter(m ->
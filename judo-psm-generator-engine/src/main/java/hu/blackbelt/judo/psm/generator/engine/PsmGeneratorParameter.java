@@ -2,12 +2,14 @@ package hu.blackbelt.judo.psm.generator.engine;
 
 import com.google.common.collect.ImmutableMap;
 import hu.blackbelt.epsilon.runtime.execution.api.Log;
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
 import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
 import lombok.Builder;
 import lombok.NonNull;
 
 import java.io.File;
 import java.util.Map;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
 import java.util.function.Supplier;
@@ -27,6 +29,66 @@ public final class PsmGeneratorParameter {
 
     Log log;
 
+    /**
+     * Variables accessible in expressions and templates. The supplier is called once per generation. The supplied map
+     * is passed to the bindContext(Map) method of the context accessor, the null values are not set as variables.
+     */
     @Builder.Default
     Supplier<Map<String, ?>> extraContextVariables = () -> ImmutableMap.of();
+
+    @Builder.Default
+    GeneratorExecutor.Mode executorMode = GeneratorExecutor.Mode.COMMON_POOL;
+
+    @Builder.Default
+    int parallelism = 0;
+
+    /**
+     * Maximum number of files rendered or waiting to be passed to the sink at the same time. The elements of templates
+     * are scheduled when there is room, so the memory used by the generation is bounded. In collect mode the completed
+     * files are kept in {@link PsmGeneratorResult}, so this bounds only the rendering.
+     * When it is 0, four times the parallelism is used. When it is negative, there is no limit.
+     */
+    @Builder.Default
+    int maxInFlight = 0;
+
+    /**
+     * When it is set, every generated file is passed to the sink as soon as it is rendered and it is not
+     * collected in {@link PsmGeneratorResult}. The actor type is null for files which are not actor type based.
+     * The sink is called from the render threads, so it have to be thread safe.
+     */
+    BiConsumer<ActorType, GeneratedFile> generatedFileSink;
+
+    /**
+     * When it is set, {@link PsmGenerator#generateToDirectory(PsmGeneratorParameter)} writes the files
+     * as soon as they are rendered instead of writing them after the whole generation.
+     */
+    @Builder.Default
+    boolean streaming = false;
+
+    /**
+     * When it is set, {@link PsmGenerator#generateToDirectory(PsmGeneratorParameter)} maintains a {@link GenerationManifest}
+     * for the target directories and does not write the files which content is not changed since the last generation.
+     */
+    @Builder.Default
+    boolean writeIfChanged = false;
+
+    /**
+     * Directory of the {@link GenerationManifest} files used by writeIfChanged. When it is not set, the manifest is
+     * stored in the target directory as `.generator-manifest`.
+     */
+    File manifestDirectory;
+
+    /**
+     * When it is set, the generation is incremental. The model elements read by every output are stored in this
+     * directory with the generated content, and the outputs which dependencies are not changed are reused
+     * instead of rendering them again. See {@link IncrementalGenerationState}.
+     */
+    File incrementalStateDirectory;
+
+    /**
+     * Receives the timings of context creation, template preparation, factory expression evaluation, rendering
+     * and writing. {@link GenerationReport} can be used to collect them.
+     */
+    @Builder.Default
+    GenerationListener generationListener = GenerationListener.NONE;
 }
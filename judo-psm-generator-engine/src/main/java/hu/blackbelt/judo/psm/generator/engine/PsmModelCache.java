@@ -0,0 +1,189 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.google.common.hash.Hashing;
+import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.emf.common.util.TreeIterator;
+import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.resource.Resource;
+import org.eclipse.emf.ecore.resource.impl.BinaryResourceImpl;
+import org.eclipse.emf.ecore.xmi.XMLResource;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.LoadArguments.psmLoadArgumentsBuilder;
+import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.buildPsmModel;
+
+/**
+ * Cache of PSM models in EMF binary format. The binary file is named by the SHA-256 checksum of the source model file
+ * and the version of the cache format, the PSM metamodel, EMF and the engine, so a changed model or a model cached by an other
+ * version is loaded from the source again. The most recently used binary files are kept in the cache directory,
+ * see {@link #DEFAULT_MAX_CACHE_FILES}.
+ * The XMI IDs of the elements are stored after the model, so the URI fragments of the elements are the same as
+ * the ones of the model loaded from XMI.
+ */
+@Slf4j
+public final class PsmModelCache {
+
+    public static final String CACHE_FILE_EXTENSION = ".psm.bin";
+
+    public static final int DEFAULT_MAX_CACHE_FILES = 5;
+
+    /**
+     * Version of the binary layout written by {@link #save(Resource, File)}.
+     */
+    static final String FORMAT_VERSION = "1";
+
+    private static final String VERSION = Hashing.sha256().hashString(FORMAT_VERSION
+            + "!" + getVersion(PsmModel.class)
+            + "!" + getVersion(EObject.class)
+            + "!" + getVersion(BinaryResourceImpl.class)
+            + "!" + getVersion(PsmModelCache.class), StandardCharsets.UTF_8).toString();
+
+    private PsmModelCache() {
+    }
+
+    /**
+     * Loads the model from the binary cache when it contains the given model file, otherwise loads the model file and
+     * stores it in the cache. The {@link #DEFAULT_MAX_CACHE_FILES} most recently used files are kept.
+     */
+    public static PsmModel loadPsmModel(File modelFile, File cacheDirectory, String name) throws IOException, PsmModel.PsmValidationException {
+        return loadPsmModel(modelFile, cacheDirectory, name, DEFAULT_MAX_CACHE_FILES);
+    }
+
+    /**
+     * Loads the model from the binary cache when it contains the given model file, otherwise loads the model file and
+     * stores it in the cache.
+     *
+     * @param maxCacheFiles number of the most recently used binary files kept in the cache directory
+     */
+    public static PsmModel loadPsmModel(File modelFile, File cacheDirectory, String name, int maxCacheFiles) throws IOException, PsmModel.PsmValidationException {
+        long startTime = System.nanoTime();
+        String checksum = com.google.common.io.Files.asByteSource(modelFile).hash(Hashing.sha256()).toString();
+        File cacheFile = getCacheFile(checksum, cacheDirectory);
+        URI uri = URI.createFileURI(modelFile.getAbsolutePath());
+
+        if (cacheFile.isFile()) {
+            try {
+                PsmModel psmModel = buildPsmModel().name(name).uri(uri).build();
+                load(psmModel.getResource(), cacheFile);
+                // The modification time is the last use of the file
+                cacheFile.setLastModified(System.currentTimeMillis());
+                log.info("PSM model loaded from binary cache in {} ms: {}",
+                        TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime), cacheFile.getAbsolutePath());
+                return psmModel;
+            } catch (IOException | RuntimeException e) {
+                log.warn("Could not load binary PSM model, loading " + modelFile.getAbsolutePath(), e);
+            }
+        }
+
+        PsmModel psmModel = PsmModel.loadPsmModel(psmLoadArgumentsBuilder()
+                .file(modelFile)
+                .uri(uri)
+                .validateModel(false)
+                .name(name));
+        try {
+            cacheDirectory.mkdirs();
+            File temporary = File.createTempFile(checksum, ".tmp", cacheDirectory);
+            save(psmModel.getResource(), temporary);
+            Files.move(temporary.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            evict(cacheDirectory, cacheFile, maxCacheFiles);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not write binary PSM model: " + cacheFile.getAbsolutePath(), e);
+        }
+        return psmModel;
+    }
+
+    static File getCacheFile(String checksum, File cacheDirectory) {
+        return new File(cacheDirectory, Hashing.sha256().hashString(checksum + "!" + VERSION, StandardCharsets.UTF_8)
+                + CACHE_FILE_EXTENSION);
+    }
+
+    /**
+     * Deletes the least recently used binary files over maxCacheFiles, the given file is kept.
+     */
+    private static void evict(File cacheDirectory, File cacheFile, int maxCacheFiles) throws IOException {
+        File[] files = cacheDirectory.listFiles((d, n) -> n.endsWith(CACHE_FILE_EXTENSION) && !n.equals(cacheFile.getName()));
+        if (files == null || files.length < maxCacheFiles) {
+            return;
+        }
+        Arrays.sort(files, Comparator.comparingLong(File::lastModified).reversed());
+        for (File file : Arrays.asList(files).subList(Math.max(0, maxCacheFiles - 1), files.length)) {
+            Files.deleteIfExists(file.toPath());
+        }
+    }
+
+    /**
+     * Returns the implementation version of the jar of the class, or the location, size and modification time
+     * of the jar when the version is not set in its manifest.
+     */
+    private static String getVersion(Class<?> type) {
+        String version = type.getPackage() != null ? type.getPackage().getImplementationVersion() : null;
+        if (version != null) {
+            return type.getName() + "@" + version;
+        }
+        try {
+            java.net.URL location = type.getProtectionDomain().getCodeSource().getLocation();
+            File file = new File(location.toURI());
+            return type.getName() + "@" + file.getAbsolutePath() + "!" + file.length() + "!" + file.lastModified();
+        } catch (Exception e) {
+            return type.getName();
+        }
+    }
+
+    /**
+     * Writes the contents of the resource in EMF binary format. When it is an XML resource, the IDs of its elements
+     * are written too.
+     */
+    public static void save(Resource resource, File file) throws IOException {
+        try (OutputStream outputStream = new BufferedOutputStream(new FileOutputStream(file), 64 * 1024)) {
+            BinaryResourceImpl.EObjectOutputStream eObjectOutputStream =
+                    new BinaryResourceImpl.EObjectOutputStream(outputStream, Collections.emptyMap());
+            eObjectOutputStream.saveResource(resource);
+            List<String> ids = new ArrayList<>();
+            if (resource instanceof XMLResource) {
+                for (TreeIterator<EObject> iterator = resource.getAllContents(); iterator.hasNext(); ) {
+                    ids.add(((XMLResource) resource).getID(iterator.next()));
+                }
+            }
+            eObjectOutputStream.writeCompressedInt(ids.size());
+            for (String id : ids) {
+                eObjectOutputStream.writeString(id);
+            }
+            eObjectOutputStream.flush();
+        }
+    }
+
+    /**
+     * Reads the contents of the resource written by {@link #save(Resource, File)}.
+     */
+    public static void load(Resource resource, File file) throws IOException {
+        try (InputStream inputStream = new BufferedInputStream(new FileInputStream(file), 64 * 1024)) {
+            BinaryResourceImpl.EObjectInputStream eObjectInputStream =
+                    new BinaryResourceImpl.EObjectInputStream(inputStream, Collections.emptyMap());
+            eObjectInputStream.loadResource(resource);
+            int count = eObjectInputStream.readCompressedInt();
+            if (count > 0 && resource instanceof XMLResource) {
+                TreeIterator<EObject> iterator = resource.getAllContents();
+                for (int i = 0; i < count && iterator.hasNext(); i++) {
+                    String id = eObjectInputStream.readString();
+                    if (id != null) {
+                        ((XMLResource) resource).setID(iterator.next(), id);
+                    } else {
+                        iterator.next();
+                    }
+                }
+            }
+        }
+    }
+}
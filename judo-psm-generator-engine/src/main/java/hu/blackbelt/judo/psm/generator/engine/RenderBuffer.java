@@ -0,0 +1,68 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reusable buffer where the templates are rendered. The characters are encoded to UTF-8 while they are written,
+ * so the rendered content is not kept as String, and the content is copied only once into the generated file.
+ * The buffers are pooled instead of held by thread locals, because the generation can run on virtual threads.
+ * Buffers grown over {@link #MAX_POOLED_CAPACITY} are dropped after use, so a large file does not keep its memory.
+ */
+final class RenderBuffer extends ByteArrayOutputStream {
+
+    private static final int INITIAL_CAPACITY = 16 * 1024;
+
+    private static final int MAX_POOLED_CAPACITY = 4 * 1024 * 1024;
+
+    private static final int MAX_POOLED_BUFFERS = 64;
+
+    private static final Queue<RenderBuffer> POOL = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final Writer writer = new OutputStreamWriter(this, StandardCharsets.UTF_8);
+
+    private RenderBuffer() {
+        super(INITIAL_CAPACITY);
+    }
+
+    static RenderBuffer acquire() {
+        RenderBuffer buffer = POOL.poll();
+        if (buffer == null) {
+            return new RenderBuffer();
+        }
+        POOLED.decrementAndGet();
+        return buffer;
+    }
+
+    Writer getWriter() {
+        return writer;
+    }
+
+    /**
+     * Returns a copy of the rendered content.
+     */
+    byte[] toContent() throws IOException {
+        writer.flush();
+        return toByteArray();
+    }
+
+    /**
+     * Gives the buffer back to the pool. The buffer must not be used after that.
+     */
+    void release() {
+        reset();
+        if (buf.length <= MAX_POOLED_CAPACITY && POOLED.incrementAndGet() <= MAX_POOLED_BUFFERS) {
+            POOL.offer(this);
+        } else if (buf.length <= MAX_POOLED_CAPACITY) {
+            POOLED.decrementAndGet();
+        }
+    }
+}
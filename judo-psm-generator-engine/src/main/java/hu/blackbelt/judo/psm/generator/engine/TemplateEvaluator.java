@@ -1,14 +1,29 @@
 package hu.blackbelt.judo.psm.generator.engine;
 
 import com.github.jknack.handlebars.Template;
+import lombok.AllArgsConstructor;
 import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.eclipse.emf.ecore.EObject;
+import org.springframework.expression.EvaluationContext;
 import org.springframework.expression.Expression;
 import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.SpelCompilerMode;
+import org.springframework.expression.spel.SpelEvaluationException;
+import org.springframework.expression.spel.SpelMessage;
+import org.springframework.expression.spel.standard.SpelExpression;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.io.IOException;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+@Slf4j
 @Getter
 public class TemplateEvaluator {
     final org.springframework.expression.Expression factoryExpression;
@@ -17,12 +32,61 @@ public class TemplateEvaluator {
     final Map<String, Expression> templateExpressions;
     final PsmGeneratorContext projectGenerator;
     final StandardEvaluationContext standardEvaluationContext;
+    final GeneratorTemplate generatorTemplate;
+
+    /**
+     * Number of interpreted evaluations after an expression is compiled in MIXED compiler mode (defined by SpelExpression).
+     */
+    static final int MIXED_COMPILE_THRESHOLD = 100;
+
+    private static final ExpressionParser INTERPRETER = new SpelExpressionParser();
+
+    /**
+     * Not compiled copies of the expressions which compiled code failed in IMMEDIATE mode.
+     */
+    final Map<Expression, Expression> interpretedExpressions = new ConcurrentHashMap<>();
+
+    /**
+     * Expressions which are compiled to bytecode, recorded from the result of {@link SpelExpression#compileExpression()}
+     * after their evaluations.
+     */
+    final Set<Expression> compiledExpressions = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Number of evaluations of the not yet compiled expressions in MIXED compiler mode.
+     */
+    final Map<Expression, AtomicInteger> mixedEvaluations = new ConcurrentHashMap<>();
+
+    /**
+     * Names of the template context expressions which reference the root object, see {@link ExpressionReferences}.
+     */
+    final Set<String> rootReferencingExpressions = new HashSet<>();
+
+    /**
+     * Values of ACTOR and RUN scoped template context expressions, keyed by expression name and actor type.
+     * The value is calculated by the first caller, the other callers of the same key wait for it.
+     */
+    final Map<List<Object>, FutureTask<ScopedValue>> scopedValues = new ConcurrentHashMap<>();
+
+    /**
+     * Time spent to parse the expressions and compile the template in nanoseconds.
+     */
+    final long preparationNanos;
 
     public TemplateEvaluator(PsmGeneratorContext projectGenerator, GeneratorTemplate generatorTemplate, StandardEvaluationContext standardEvaluationContext) throws IOException {
+        long startTime = System.nanoTime();
         this.projectGenerator = projectGenerator;
         this.standardEvaluationContext = standardEvaluationContext;
-        ExpressionParser parser = generatorTemplate.getParser();
-        templateExpressions = generatorTemplate.parseExpressions();
+        this.generatorTemplate = generatorTemplate;
+        ExpressionParser parser = projectGenerator.getExpressionParser();
+        templateExpressions = generatorTemplate.parseExpressions(parser);
+        for (TemplateSpringELExpression templateExpression : generatorTemplate.getTemplateContext()) {
+            ExpressionReferences references = ExpressionReferences.of(templateExpressions.get(templateExpression.getName()));
+            checkScopedExpression(templateExpression, references);
+            if (references.isRoot()) {
+                rootReferencingExpressions.add(templateExpression.getName());
+            }
+        }
         if (generatorTemplate.getFactoryExpression() != null) {
             factoryExpression = parser.parseExpression(generatorTemplate.getFactoryExpression());
         } else {
@@ -32,12 +96,15 @@ public class TemplateEvaluator {
         if (generatorTemplate.isCopy()) {
             template = null;
         } else if (generatorTemplate.getTemplate() != null && !"".equals(generatorTemplate.getTemplate().trim())) {
-            template = projectGenerator.createHandlebars().compileInline(generatorTemplate.getTemplate());
+            template = projectGenerator.getHandlebars().compileInline(generatorTemplate.getTemplate());
         } else if (generatorTemplate.getTemplateName() != null && !"".equals(generatorTemplate.getTemplateName().trim())) {
-            template = projectGenerator.createHandlebars().compile(generatorTemplate.getTemplateName());
+            template = projectGenerator.getHandlebars().compile(generatorTemplate.getTemplateName());
         } else {
             template = null;
         }
+        preparationNanos = System.nanoTime() - startTime;
+        log.debug("Template {} prepared in {} ms", generatorTemplate.getName(),
+                TimeUnit.NANOSECONDS.toMillis(preparationNanos));
     }
 
     public <C> C getFactoryExpressionResultOrValue(GeneratorTemplate template, Object value, Class<C> type) {
@@ -45,10 +112,178 @@ public class TemplateEvaluator {
             return (C) value;
         } else {
             try {
-                return getFactoryExpression().getValue(standardEvaluationContext, value, type);
+                return evaluate(getFactoryExpression(), standardEvaluationContext, value, type);
             } catch (Exception e) {
                 throw new IllegalArgumentException("Could not evaluate factory expression in " + template.toString());
             }
         }
     }
+
+    /**
+     * Returns the value of a template context expression. ELEMENT scoped expressions are evaluated with the given context,
+     * the others are evaluated once per actor type / generation and the value is reused. The model elements read
+     * by the evaluation are recorded again for every reuse, so the incremental generation sees them as dependencies.
+     * The expressions referencing the root object are evaluated again with their first value as root object, like
+     * the earlier versions did with every expression.
+     */
+    public Object evaluateTemplateExpression(TemplateSpringELExpression templateExpression, EvaluationContext evaluationContext, Object actorType) {
+        Expression expression = templateExpressions.get(templateExpression.getName());
+        TemplateSpringELExpression.Scope scope = getScope(templateExpression);
+        if (scope == TemplateSpringELExpression.Scope.ELEMENT) {
+            return evaluateTemplateExpression(templateExpression.getName(), expression, evaluationContext);
+        }
+        List<Object> key = Arrays.asList(templateExpression.getName(),
+                scope == TemplateSpringELExpression.Scope.ACTOR ? actorType : null);
+        FutureTask<ScopedValue> task = new FutureTask<>(() -> {
+            Set<EObject> reads = Collections.newSetFromMap(new IdentityHashMap<>());
+            Object value = ModelReadTracker.recordInto(reads,
+                    () -> evaluateTemplateExpression(templateExpression.getName(), expression, evaluationContext));
+            return new ScopedValue(value, reads);
+        });
+        FutureTask<ScopedValue> scopedTask = scopedValues.putIfAbsent(key, task);
+        if (scopedTask == null) {
+            scopedTask = task;
+            task.run();
+        }
+        ScopedValue scopedValue;
+        try {
+            scopedValue = scopedTask.get();
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof RuntimeException
+                    ? (RuntimeException) e.getCause()
+                    : new IllegalStateException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for " + templateExpression.getName(), e);
+        }
+        scopedValue.reads.forEach(ModelReadTracker::record);
+        return scopedValue.value;
+    }
+
+    private Object evaluateTemplateExpression(String name, Expression expression, EvaluationContext evaluationContext) {
+        Object value = evaluate(expression, evaluationContext, Object.class);
+        if (rootReferencingExpressions.contains(name)) {
+            value = evaluate(expression, evaluationContext, value, Object.class);
+        }
+        return value;
+    }
+
+    private static TemplateSpringELExpression.Scope getScope(TemplateSpringELExpression templateExpression) {
+        return templateExpression.getScope() != null ? templateExpression.getScope() : TemplateSpringELExpression.Scope.ELEMENT;
+    }
+
+    /**
+     * The scoped values are calculated with the context of the first render, so the scoped expressions must not
+     * reference the element specific parts of the context: #self, the root object and #actorType in RUN scope.
+     */
+    private void checkScopedExpression(TemplateSpringELExpression templateExpression, ExpressionReferences references) {
+        TemplateSpringELExpression.Scope scope = getScope(templateExpression);
+        if (scope == TemplateSpringELExpression.Scope.ELEMENT) {
+            return;
+        }
+        List<String> elementReferences = new ArrayList<>();
+        if (references.isRoot()) {
+            elementReferences.add("the root object");
+        }
+        if (references.getVariables().contains(PsmGenerator.SELF)) {
+            elementReferences.add("#" + PsmGenerator.SELF);
+        }
+        if (scope == TemplateSpringELExpression.Scope.RUN && references.getVariables().contains(PsmGenerator.ACTOR_TYPE)) {
+            elementReferences.add("#" + PsmGenerator.ACTOR_TYPE);
+        }
+        if (!elementReferences.isEmpty()) {
+            throw new IllegalArgumentException(scope + " scoped template context expression " + templateExpression.getName()
+                    + " of " + generatorTemplate.getName() + " must not reference " + String.join(", ", elementReferences)
+                    + ": " + templateExpression.getExpression());
+        }
+    }
+
+    public <T> T evaluate(Expression expression, EvaluationContext evaluationContext, Class<T> type) {
+        return evaluate(expression, evaluationContext, null, type);
+    }
+
+    /**
+     * Evaluates the given expression. When rootObject is null, the root object of evaluation context
+     * is used. When a compiled expression fails in IMMEDIATE compiler mode, the expression is parsed again without
+     * compilation and it is interpreted from then on. The errors of the evaluation are thrown without evaluating again.
+     */
+    public <T> T evaluate(Expression expression, EvaluationContext evaluationContext, Object rootObject, Class<T> type) {
+        Expression interpreted = interpretedExpressions.get(expression);
+        try {
+            if (interpreted != null) {
+                return getValue(interpreted, evaluationContext, rootObject, type);
+            }
+            T value = getValue(expression, evaluationContext, rootObject, type);
+            recordCompiled(expression);
+            return value;
+        } catch (SpelEvaluationException e) {
+            if (interpreted == null && e.getMessageCode() == SpelMessage.EXCEPTION_RUNNING_COMPILED_EXPRESSION) {
+                log.debug("Compiled expression failed, it is interpreted from now: {}", expression.getExpressionString());
+                interpreted = interpretedExpressions.computeIfAbsent(expression,
+                        x -> INTERPRETER.parseExpression(x.getExpressionString()));
+                return getValue(interpreted, evaluationContext, rootObject, type);
+            }
+            throw e;
+        }
+    }
+
+    private static <T> T getValue(Expression expression, EvaluationContext evaluationContext, Object rootObject, Class<T> type) {
+        return rootObject != null
+                ? expression.getValue(evaluationContext, rootObject, type)
+                : expression.getValue(evaluationContext, type);
+    }
+
+    /**
+     * Records whether the evaluated expression is compiled. The expression is compiled by SpelExpression on its first
+     * evaluation in IMMEDIATE mode and after {@value #MIXED_COMPILE_THRESHOLD} interpreted evaluations in MIXED mode,
+     * {@link SpelExpression#compileExpression()} is called from then on, it returns the state of the compiled one
+     * without compiling again.
+     */
+    private void recordCompiled(Expression expression) {
+        SpelCompilerMode compilerMode = projectGenerator.getExpressionCompilerMode();
+        if (compilerMode == SpelCompilerMode.OFF || !(expression instanceof SpelExpression)
+                || compiledExpressions.contains(expression)) {
+            return;
+        }
+        if (compilerMode == SpelCompilerMode.MIXED
+                && mixedEvaluations.computeIfAbsent(expression, e -> new AtomicInteger()).incrementAndGet() <= MIXED_COMPILE_THRESHOLD) {
+            return;
+        }
+        if (((SpelExpression) expression).compileExpression()) {
+            compiledExpressions.add(expression);
+            mixedEvaluations.remove(expression);
+        }
+    }
+
+    /**
+     * Logs which expressions of the template are compiled. It has to be called after the expressions are evaluated,
+     * because the expressions are compiled by their evaluations (in MIXED mode after
+     * {@value #MIXED_COMPILE_THRESHOLD} interpreted evaluations).
+     * Returns the number of compiled expressions.
+     */
+    public int logCompiledExpressions() {
+        int compiled = 0;
+        Map<String, Expression> expressions = new LinkedHashMap<>();
+        if (factoryExpression != null) {
+            expressions.put("factoryExpression", factoryExpression);
+        }
+        expressions.put("pathExpression", pathExpression);
+        expressions.putAll(templateExpressions);
+        for (Map.Entry<String, Expression> entry : expressions.entrySet()) {
+            Expression expression = entry.getValue();
+            boolean expressionCompiled = !interpretedExpressions.containsKey(expression) && compiledExpressions.contains(expression);
+            if (expressionCompiled) {
+                compiled++;
+            }
+            log.debug("{} expression {} of {}: {}", expressionCompiled ? "Compiled" : "Interpreted", entry.getKey(),
+                    generatorTemplate.getName(), expression.getExpressionString());
+        }
+        return compiled;
+    }
+
+    @AllArgsConstructor
+    private static final class ScopedValue {
+        private final Object value;
+        private final Set<EObject> reads;
+    }
 }
@@ -12,4 +12,20 @@ import lombok.Setter;
 public class TemplateSpringELExpression {
     private String name;
     private String expression;
+
+    /**
+     * Scope of the expression value. ELEMENT expressions are evaluated for every generated file, ACTOR expressions
+     * once per actor type, RUN expressions once per generation. The scoped values are computed on the first render
+     * which uses them, so they must not reference #self and the root object, RUN expressions #actorType too.
+     * It is checked when the template is prepared.
+     */
+    private Scope scope = Scope.ELEMENT;
+
+    public TemplateSpringELExpression(String name, String expression) {
+        this(name, expression, Scope.ELEMENT);
+    }
+
+    public enum Scope {
+        ELEMENT, ACTOR, RUN
+    }
 }
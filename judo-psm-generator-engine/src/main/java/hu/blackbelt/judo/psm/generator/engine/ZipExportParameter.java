@@ -0,0 +1,57 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import lombok.Builder;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.zip.Deflater;
+
+/**
+ * Parameters of ZIP export, see {@link GeneratedZipWriter}.
+ */
+@Builder(builderMethodName = "zipExportParameter")
+public final class ZipExportParameter {
+
+    /**
+     * 1980-02-01T00:00:00Z, the beginning of DOS time with a margin, so it can be stored in every time zone.
+     */
+    public static final long DEFAULT_ENTRY_TIME = 315532800000L + 31L * 24 * 60 * 60 * 1000;
+
+    /**
+     * Executor used to compress the entries. The executor of generation can be used here, see {@link GeneratorExecutor}.
+     */
+    @Builder.Default
+    Executor executor = ForkJoinPool.commonPool();
+
+    /**
+     * Deflate level (0-9 or {@link Deflater#DEFAULT_COMPRESSION}).
+     */
+    @Builder.Default
+    int compressionLevel = Deflater.DEFAULT_COMPRESSION;
+
+    /**
+     * When it is set, the entries are stored without compression.
+     */
+    @Builder.Default
+    boolean store = false;
+
+    /**
+     * When it is set, the entries are written in the order of their paths, otherwise in the order of the given collection.
+     */
+    @Builder.Default
+    boolean sortEntries = true;
+
+    /**
+     * Modification time of every entry in UTC. When it is null, the current time is used.
+     * The time is stored without time zone conversion, so the same archive is created on every machine.
+     */
+    @Builder.Default
+    Long entryTime = DEFAULT_ENTRY_TIME;
+
+    /**
+     * Maximum number of entries compressed ahead of the entry written. When it is not positive, twice the number
+     * of available processors is used.
+     */
+    @Builder.Default
+    int maxPendingEntries = 0;
+}
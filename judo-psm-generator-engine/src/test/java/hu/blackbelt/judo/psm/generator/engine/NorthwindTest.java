@@ -1,25 +1,53 @@
 package hu.blackbelt.judo.psm.generator.engine;
 
+import com.github.jknack.handlebars.Context;
 import com.google.common.collect.ImmutableMap;
+import com.google.common.io.ByteStreams;
 import hu.blackbelt.epsilon.runtime.execution.api.Log;
 import hu.blackbelt.epsilon.runtime.execution.impl.BufferedSlf4jLogger;
+import hu.blackbelt.judo.generator.commons.GeneratedFile;
 import hu.blackbelt.judo.generator.commons.TemplateHelperFinder;
 import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
 import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
 import hu.blackbelt.model.northwind.Demo;
 import lombok.extern.slf4j.Slf4j;
 //import org.eclipse.emf.common.util.URI;
+import org.eclipse.emf.ecore.EAttribute;
 import org.eclipse.emf.ecore.EObject;
+import org.eclipse.emf.ecore.EReference;
+import org.eclipse.emf.ecore.EStructuralFeature;
+import org.eclipse.emf.ecore.util.EcoreUtil;
 import org.junit.jupiter.api.*;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+import org.springframework.expression.spel.SpelCompilerMode;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.SaveArguments.psmSaveArgumentsBuilder;
 import static hu.blackbelt.judo.meta.psm.runtime.PsmModel.buildPsmModel;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.entry;
 import static org.assertj.core.api.Assertions.linesOf;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -108,6 +136,832 @@ public class NorthwindTest {
 
     }
 
+    @Test
+    void testCreateApplicationStreaming() throws Exception {
+        testName = "NorthwindStreaming";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-streaming");
+
+        GenerationReport report = new GenerationReport();
+        GeneratedFileWriter.Statistics statistics;
+        try (Log bufferedLog = new BufferedSlf4jLogger(log)) {
+            statistics = PsmGenerator.generateToDirectory(generatorParameter(createGeneratorContext(), bufferedLog, testOutput)
+                            .executorMode(GeneratorExecutor.Mode.PLATFORM)
+                            .parallelism(2)
+                            .streaming(true)
+                            .generationListener(report)
+                    );
+        }
+
+        assertThat(linesOf(new File(testOutput, "InternalUser/actorname"))).containsExactly(
+                "DECORATED Name: InternalUser",
+                "Extra: extra",
+                "FQName: demo::InternalUser",
+                "PlainName: internaluser",
+                "Plain FQ: demo__internaluser",
+                "Path FQ: demo__internal_user",
+                "ModelName FQ: Demo",
+                "Package Name FQ: ",
+                ""
+        );
+        assertTrue(new File(testOutput, "ExternalUser/actornameOverride1").isFile());
+
+        Map<String, Object> reportValues = report.toMap();
+        assertThat((Long) reportValues.get("files")).isGreaterThan(0L);
+        assertThat((Long) reportValues.get("writtenFiles")).isEqualTo(statistics.getWritten());
+        assertThat((List) reportValues.get("templates")).isNotEmpty();
+    }
+
+    @Test
+    void testMaxInFlight() throws Exception {
+        testName = "NorthwindMaxInFlight";
+
+        psmModel = new Demo().fullDemo();
+
+        // Tasks submitted to the executor and not completed yet
+        AtomicInteger pending = new AtomicInteger();
+        AtomicInteger maxPending = new AtomicInteger();
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            Executor countingExecutor = task -> {
+                maxPending.accumulateAndGet(pending.incrementAndGet(), Math::max);
+                executorService.execute(task);
+            };
+            GenerationPipeline pipeline = new GenerationPipeline(countingExecutor, 2);
+            for (int i = 0; i < 20; i++) {
+                pipeline.submit(() -> {
+                    sleep(5);
+                    // Decremented before the task is completed, the permit is released after it
+                    pending.decrementAndGet();
+                    return null;
+                });
+            }
+            pipeline.await();
+        } finally {
+            executorService.shutdown();
+        }
+        assertThat(pending.get()).isEqualTo(0);
+        assertThat(maxPending.get()).isBetween(1, 2);
+
+        // The files are rendered and passed to the sink within the limit
+        AtomicInteger rendering = new AtomicInteger();
+        AtomicInteger maxRendering = new AtomicInteger();
+        AtomicInteger files = new AtomicInteger();
+        PsmGenerator.execute(generatorParameter(createGeneratorContext(), null, new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-in-flight"))
+                .executorMode(GeneratorExecutor.Mode.PLATFORM)
+                .parallelism(4)
+                .maxInFlight(2)
+                .generatedFileSink((actorType, generatedFile) -> {
+                    maxRendering.accumulateAndGet(rendering.incrementAndGet(), Math::max);
+                    sleep(5);
+                    files.incrementAndGet();
+                    rendering.decrementAndGet();
+                }));
+        assertThat(files.get()).isGreaterThan(2);
+        assertThat(maxRendering.get()).isBetween(1, 2);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Test
+    void testExecutorModes() throws Exception {
+        testName = "NorthwindExecutorModes";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-executor");
+        PsmGeneratorContext generatorContext = createGeneratorContext();
+        Map<GeneratorExecutor.Mode, Map<String, String>> outputs = new EnumMap<>(GeneratorExecutor.Mode.class);
+        for (GeneratorExecutor.Mode mode : GeneratorExecutor.Mode.values()) {
+            outputs.put(mode, contents(PsmGenerator.execute(generatorParameter(generatorContext, null, testOutput)
+                    .executorMode(mode)
+                    .parallelism(3))));
+        }
+
+        assertThat(outputs.get(GeneratorExecutor.Mode.CALLER_RUNS)).isNotEmpty();
+        for (GeneratorExecutor.Mode mode : GeneratorExecutor.Mode.values()) {
+            assertThat(outputs.get(mode)).isEqualTo(outputs.get(GeneratorExecutor.Mode.CALLER_RUNS));
+        }
+
+        try (GeneratorExecutor executor = GeneratorExecutor.create(GeneratorExecutor.Mode.PLATFORM, 3)) {
+            assertThat(executor.getParallelism()).isEqualTo(3);
+        }
+        try (GeneratorExecutor executor = GeneratorExecutor.create(GeneratorExecutor.Mode.VIRTUAL, 3)) {
+            // Virtual threads are used when the runtime supports them, otherwise platform threads
+            assertThat(executor.getMode()).isIn(GeneratorExecutor.Mode.VIRTUAL, GeneratorExecutor.Mode.PLATFORM);
+        }
+        try (GeneratorExecutor executor = GeneratorExecutor.create(null, 0)) {
+            assertThat(executor.getMode()).isEqualTo(GeneratorExecutor.Mode.COMMON_POOL);
+        }
+    }
+
+    @Test
+    void testExpressionCompilerModes() throws Exception {
+        testName = "NorthwindExpressionCompilerModes";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-compiler");
+        Map<SpelCompilerMode, Map<String, String>> outputs = new EnumMap<>(SpelCompilerMode.class);
+        for (SpelCompilerMode mode : SpelCompilerMode.values()) {
+            PsmGeneratorResult result = PsmGenerator.execute(generatorParameter(
+                    PsmGenerator.createGeneratorContext(contextArgument().expressionCompilerMode(mode).build()), null, testOutput));
+            outputs.put(mode, contents(result));
+        }
+
+        assertThat(outputs.get(SpelCompilerMode.OFF)).isNotEmpty();
+        assertThat(outputs.get(SpelCompilerMode.MIXED)).isEqualTo(outputs.get(SpelCompilerMode.OFF));
+        assertThat(outputs.get(SpelCompilerMode.IMMEDIATE)).isEqualTo(outputs.get(SpelCompilerMode.OFF));
+    }
+
+    @Test
+    void testTemplateContextExpressions() throws Exception {
+        testName = "NorthwindTemplateContext";
+
+        psmModel = new Demo().fullDemo();
+
+        PsmGeneratorContext generatorContext = createGeneratorContext("context-project", "templates:\n"
+                + "  - name: context\n"
+                + "    pathExpression: \"#actorType.name + '/context'\"\n"
+                + "    template: \"{{{elementName}}}|{{{rootValue}}}|{{{actor}}}|{{{run}}}\"\n"
+                + "    actorTypeBased: true\n"
+                + "    templateContext:\n"
+                + "      - name: elementName\n"
+                + "        expression: \"#self.name\"\n"
+                + "      - name: rootValue\n"
+                + "        expression: \"#this == null ? #self : #this.name + '!'\"\n"
+                + "      - name: actor\n"
+                + "        expression: \"#actorType.name\"\n"
+                + "        scope: ACTOR\n"
+                + "      - name: run\n"
+                + "        expression: \"#actorTypes.size()\"\n"
+                + "        scope: RUN\n");
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-context");
+        Map<String, String> contents = contents(PsmGenerator.execute(generatorParameter(generatorContext, null, testOutput)
+                .executorMode(GeneratorExecutor.Mode.PLATFORM)
+                .parallelism(4)));
+
+        List<ActorType> actorTypes = allPsm(ActorType.class).collect(Collectors.toList());
+        assertThat(contents).hasSize(actorTypes.size());
+        for (ActorType actorType : actorTypes) {
+            // The expression referencing the root object is evaluated again with its first value as root
+            assertThat(contents.get(actorType.getName() + "/context")).isEqualTo(actorType.getName() + "|" + actorType.getName() + "!|"
+                    + actorType.getName() + "|" + actorTypes.size());
+        }
+
+        for (String expression : Arrays.asList("#self.name", "name", "#this")) {
+            PsmGeneratorContext invalidContext = createGeneratorContext("invalid-context-project", "templates:\n"
+                    + "  - name: invalid\n"
+                    + "    pathExpression: \"'invalid'\"\n"
+                    + "    template: \"{{{value}}}\"\n"
+                    + "    actorTypeBased: true\n"
+                    + "    templateContext:\n"
+                    + "      - name: value\n"
+                    + "        expression: \"" + expression + "\"\n"
+                    + "        scope: ACTOR\n");
+            Assertions.assertThrows(IllegalArgumentException.class,
+                    () -> PsmGenerator.execute(generatorParameter(invalidContext, null, testOutput)));
+        }
+    }
+
+    @Test
+    void testContextAccessor() throws Exception {
+        testName = "NorthwindContextAccessor";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-context-accessor");
+        Map<String, Object> parameters = new HashMap<>();
+        parameters.put("extra", "extra");
+        parameters.put("unset", null);
+        TestContextAccessor.reset();
+        Map<String, String> contents = contents(PsmGenerator.execute(generatorParameter(
+                PsmGenerator.createGeneratorContext(contextArgument().contextAccessor(TestContextAccessor.class).build()), null, testOutput)
+                .extraContextVariables(() -> parameters)));
+
+        assertThat(TestContextAccessor.BOUND_TYPES).containsOnly(Context.class, StandardEvaluationContext.class, Map.class);
+        // The accessor receives the supplied (mutable) map with its null values
+        assertThat(TestContextAccessor.PARAMETERS.get()).isSameAs(parameters);
+        assertThat(contents.get("InternalUser/actorname")).contains("Extra: extra");
+    }
+
+    @Test
+    void testArchiveTemplates() throws Exception {
+        testName = "NorthwindArchiveTemplates";
+
+        psmModel = new Demo().fullDemo();
+
+        // The template directories are packed into one archive under different paths
+        File archive = new File(TARGET_TEST_CLASSES, "northwind-templates.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(archive))) {
+            for (Map.Entry<String, String> directory : ImmutableMap.of(OVERRIDE_1, "templates/", OVERRIDE_2, "decorator/").entrySet()) {
+                Path source = new File(TARGET_TEST_CLASSES, directory.getKey()).toPath();
+                try (Stream<Path> paths = Files.walk(source)) {
+                    for (Path path : paths.filter(Files::isRegularFile).sorted().collect(Collectors.toList())) {
+                        zip.putNextEntry(new ZipEntry(directory.getValue() + source.relativize(path).toString().replace(File.separatorChar, '/')));
+                        zip.write(Files.readAllBytes(path));
+                        zip.closeEntry();
+                    }
+                }
+            }
+        }
+        LinkedHashMap<String, URI> uris = new LinkedHashMap<>();
+        uris.put("templates", PathTemplateLoader.getArchiveUri(archive.toPath(), "templates"));
+        uris.put("decorator", PathTemplateLoader.getArchiveUri(archive.toPath(), "/decorator/"));
+
+        File testOutput = new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-archive");
+        Map<String, String> expected = contents(PsmGenerator.execute(generatorParameter(createGeneratorContext(), null, testOutput)));
+        try (PathTemplateLoader loader = new PathTemplateLoader(uris.values())) {
+            PsmGeneratorContext generatorContext = PsmGenerator.createGeneratorContext(contextArgument()
+                    .uris(uris)
+                    .urlTemplateLoaderFactory(u -> loader)
+                    .urlResolverFactory(u -> loader)
+                    .build());
+            Map<String, String> contents = contents(PsmGenerator.execute(generatorParameter(generatorContext, null, testOutput)));
+
+            // Same result as the template directories, including the decorated template
+            assertThat(contents).isEqualTo(expected);
+            assertThat(contents.get("InternalUser/actorname")).startsWith("DECORATED");
+
+            // Copy templates are read from the archive entry
+            try (InputStream inputStream = loader.getResource("test1/actorname.hbs").openStream()) {
+                assertThat(ByteStreams.toByteArray(inputStream))
+                        .isEqualTo(Files.readAllBytes(new File(TARGET_TEST_CLASSES, OVERRIDE_1 + "/test1/actorname.hbs").toPath()));
+            }
+            assertThat(loader.getResource("test1/missing.hbs")).isNull();
+        }
+    }
+
+    @Test
+    void testZipExportIsReproducible() throws Exception {
+        testName = "NorthwindZipExport";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-zip");
+
+        PsmGeneratorResult result;
+        try (Log bufferedLog = new BufferedSlf4jLogger(log)) {
+            result = PsmGenerator.execute(generatorParameter(createGeneratorContext(), bufferedLog, testOutput));
+        }
+        List<GeneratedFile> generatedFiles = new ArrayList<>(result.getGenerated());
+
+        ZipExportParameter zipExportParameter = ZipExportParameter.zipExportParameter().maxPendingEntries(2).build();
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        PsmGenerator.writeGeneratedFilesAsZip(generatedFiles, first, zipExportParameter);
+        Collections.reverse(generatedFiles);
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        PsmGenerator.writeGeneratedFilesAsZip(generatedFiles, second, zipExportParameter);
+
+        assertTrue(first.size() > 0);
+        assertThat(second.toByteArray()).isEqualTo(first.toByteArray());
+
+        int entries = 0;
+        try (ZipInputStream zipInputStream = new ZipInputStream(new ByteArrayInputStream(first.toByteArray()))) {
+            while (zipInputStream.getNextEntry() != null) {
+                entries++;
+            }
+        }
+        assertThat(entries).isEqualTo(generatedFiles.size());
+
+        // The in memory archive keeps the order of the given files
+        List<String> paths = new ArrayList<>();
+        try (ZipInputStream zipInputStream = new ZipInputStream(PsmGenerator.getGeneratedFilesAsZip(generatedFiles))) {
+            ZipEntry entry;
+            while ((entry = zipInputStream.getNextEntry()) != null) {
+                paths.add(entry.getName());
+            }
+        }
+        assertThat(paths).containsExactlyElementsOf(generatedFiles.stream().map(GeneratedFile::getPath).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testWriteIfChanged() throws Exception {
+        testName = "NorthwindWriteIfChanged";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-write-if-changed");
+        File manifestDirectory =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-write-if-changed-manifest");
+
+        try (Log bufferedLog = new BufferedSlf4jLogger(log)) {
+            PsmGeneratorParameter.PsmGeneratorParameterBuilder parameter = generatorParameter(createGeneratorContext(), bufferedLog, testOutput)
+                    .writeIfChanged(true)
+                    .manifestDirectory(manifestDirectory);
+
+            GeneratedFileWriter.Statistics first = PsmGenerator.generateToDirectory(parameter);
+            GeneratedFileWriter.Statistics second = PsmGenerator.generateToDirectory(parameter);
+
+            assertTrue(first.getWritten() + first.getUnchanged() > 0);
+            assertThat(second.getWritten()).isEqualTo(0);
+            assertThat(second.getUnchanged()).isEqualTo(first.getWritten() + first.getUnchanged());
+
+            // Edited and deleted outputs are written again, even when the edit keeps the size of the file
+            File edited = new File(testOutput, "InternalUser/actorname");
+            List<String> expected = linesOf(edited);
+            String content = new String(Files.readAllBytes(edited.toPath()), StandardCharsets.UTF_8);
+            Files.write(edited.toPath(), content.toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+            assertTrue(edited.setLastModified(edited.lastModified() + 2000));
+            Files.delete(new File(testOutput, "InternalUser/actornameOverride1").toPath());
+
+            GeneratedFileWriter.Statistics third = PsmGenerator.generateToDirectory(parameter);
+            assertThat(third.getWritten()).isEqualTo(2);
+            assertThat(linesOf(edited)).containsExactlyElementsOf(expected);
+            assertTrue(new File(testOutput, "InternalUser/actornameOverride1").isFile());
+        }
+        assertTrue(GenerationManifest.getManifestFile(testOutput, manifestDirectory).isFile());
+    }
+
+    @Test
+    void testMultipleDescriptors() throws Exception {
+        testName = "NorthwindMultipleDescriptors";
+
+        psmModel = new Demo().fullDemo();
+
+        File firstOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-first");
+        File secondOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-second");
+
+        List<PsmGeneratorContext> generatorContexts = PsmGenerator.createGeneratorContexts(
+                contextArgument().descriptorName(null).build(), Arrays.asList("test-project", "second-project"));
+
+        assertThat(generatorContexts).hasSize(2);
+        assertThat(generatorContexts.get(1).getHandlebars()).isSameAs(generatorContexts.get(0).getHandlebars());
+        assertThat(generatorContexts.get(1).getGeneratorModel().getTemplates()).hasSize(1);
+
+        try (Log bufferedLog = new BufferedSlf4jLogger(log)) {
+            List<File> outputs = Arrays.asList(firstOutput, secondOutput);
+            ExecutorService executorService = Executors.newFixedThreadPool(2);
+            try {
+                for (Future<GeneratedFileWriter.Statistics> future : executorService.invokeAll(Stream.of(0, 1)
+                        .map(i -> (Callable<GeneratedFileWriter.Statistics>) () ->
+                                PsmGenerator.generateToDirectory(generatorParameter(generatorContexts.get(i), bufferedLog, outputs.get(i))))
+                        .collect(Collectors.toList()))) {
+                    GeneratedFileWriter.Statistics statistics = future.get();
+                    assertTrue(statistics.getWritten() + statistics.getUnchanged() > 0);
+                }
+            } finally {
+                executorService.shutdown();
+            }
+        }
+
+        assertTrue(new File(firstOutput, "InternalUser/actorname").isFile());
+        assertTrue(new File(firstOutput, "InternalUser/actornameOverride1").isFile());
+        assertThat(linesOf(new File(secondOutput, "InternalUser/second-actorname")))
+                .containsExactlyElementsOf(linesOf(new File(firstOutput, "InternalUser/actorname")));
+        assertTrue(!new File(secondOutput, "InternalUser/actornameOverride1").exists());
+    }
+
+    @Test
+    void testMultipleDescriptorsSameDestination() throws Exception {
+        testName = "NorthwindMultipleDescriptorsSameDestination";
+
+        psmModel = new Demo().fullDemo();
+
+        File testOutput =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-same-destination");
+        File manifestDirectory =  new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-same-destination-manifest");
+        List<PsmGeneratorContext> generatorContexts = PsmGenerator.createGeneratorContexts(
+                contextArgument().descriptorName(null).build(), Arrays.asList("test-project", "second-project"));
+
+        List<List<GeneratedFileWriter.Statistics>> runs = new ArrayList<>();
+        for (int run = 0; run < 2; run++) {
+            ExecutorService executorService = Executors.newFixedThreadPool(2);
+            try (Log bufferedLog = new BufferedSlf4jLogger(log);
+                 GeneratedFileWriter sharedWriter = new GeneratedFileWriter(true, manifestDirectory, bufferedLog, null)) {
+                List<GeneratedFileWriter.Statistics> statistics = new ArrayList<>();
+                for (Future<GeneratedFileWriter.Statistics> future : executorService.invokeAll(Stream.of(0, 1)
+                        .map(i -> (Callable<GeneratedFileWriter.Statistics>) () ->
+                                PsmGenerator.generateToDirectory(generatorParameter(generatorContexts.get(i), bufferedLog, testOutput).build(), sharedWriter))
+                        .collect(Collectors.toList()))) {
+                    statistics.add(future.get());
+                }
+                runs.add(statistics);
+            } finally {
+                executorService.shutdown();
+            }
+        }
+
+        // The manifest contains the files of both descriptors
+        Set<String> files;
+        try (Stream<Path> paths = Files.walk(testOutput.toPath())) {
+            files = paths.filter(Files::isRegularFile).map(p -> testOutput.toPath().relativize(p).toString().replace(File.separatorChar, '/'))
+                    .collect(Collectors.toSet());
+        }
+        assertThat(files).contains("InternalUser/actorname", "InternalUser/second-actorname");
+        String manifest = new String(Files.readAllBytes(GenerationManifest.getManifestFile(testOutput, manifestDirectory).toPath()), StandardCharsets.UTF_8);
+        for (String file : files) {
+            assertThat(manifest).contains("\"" + file + "\"");
+        }
+        assertTrue(GenerationManifest.load(testOutput, manifestDirectory).isUpToDate());
+
+        // Nothing is written again by any of the descriptors
+        for (GeneratedFileWriter.Statistics statistics : runs.get(1)) {
+            assertThat(statistics.getWritten()).isEqualTo(0L);
+            assertThat(statistics.getUnchanged()).isGreaterThan(0L);
+        }
+    }
+
+    @Test
+    void testPsmModelCache() throws Exception {
+        testName = "NorthwindModelCache";
+
+        psmModel = new Demo().fullDemo();
+
+        File modelFile = new File(TARGET_TEST_CLASSES, "northwind-model-cache-psm.model");
+        File cacheDirectory = new File(TARGET_TEST_CLASSES, "psm-model-cache");
+        psmModel.savePsmModel(psmSaveArgumentsBuilder().file(modelFile));
+        if (cacheDirectory.isDirectory()) {
+            Arrays.stream(cacheDirectory.listFiles()).forEach(File::delete);
+        }
+
+        PsmModel fromXmi = PsmModelCache.loadPsmModel(modelFile, cacheDirectory, TEST);
+        assertThat(cacheDirectory.list((d, n) -> n.endsWith(PsmModelCache.CACHE_FILE_EXTENSION))).hasSize(1);
+        PsmModel fromBinary = PsmModelCache.loadPsmModel(modelFile, cacheDirectory, TEST);
+
+        assertThat(uriFragments(fromBinary)).isNotEmpty().containsExactlyElementsOf(uriFragments(fromXmi));
+
+        // An other model is cached next to the first one, over the limit the least recently used one is deleted
+        File otherModelFile = new File(TARGET_TEST_CLASSES, "northwind-model-cache-other-psm.model");
+        Files.copy(modelFile.toPath(), otherModelFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        Files.write(otherModelFile.toPath(), "<!-- other -->".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        File[] firstCacheFile = cacheDirectory.listFiles((d, n) -> n.endsWith(PsmModelCache.CACHE_FILE_EXTENSION));
+        PsmModelCache.loadPsmModel(otherModelFile, cacheDirectory, TEST, 2);
+        assertThat(cacheDirectory.list((d, n) -> n.endsWith(PsmModelCache.CACHE_FILE_EXTENSION))).hasSize(2);
+        PsmModelCache.loadPsmModel(otherModelFile, cacheDirectory, TEST, 1);
+        assertThat(cacheDirectory.list((d, n) -> n.endsWith(PsmModelCache.CACHE_FILE_EXTENSION))).hasSize(2);
+        Files.write(otherModelFile.toPath(), "<!-- changed -->".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+        PsmModelCache.loadPsmModel(otherModelFile, cacheDirectory, TEST, 1);
+        assertThat(cacheDirectory.list((d, n) -> n.endsWith(PsmModelCache.CACHE_FILE_EXTENSION))).hasSize(1);
+        assertTrue(!firstCacheFile[0].exists());
+    }
+
+    @Test
+    void testModelIndex() {
+        testName = "NorthwindModelIndex";
+
+        psmModel = new Demo().fullDemo();
+
+        ModelIndex index = new ModelIndex(psmModel.getResourceSet());
+
+        List<ActorType> actorTypes = allPsm(ActorType.class).collect(Collectors.toList());
+        assertThat(index.all(ActorType.class)).containsExactlyElementsOf(actorTypes);
+        assertThat(index.all("ActorType")).containsExactlyElementsOf(actorTypes);
+        assertTrue(index.all("NamedElement").size() > actorTypes.size());
+        assertThat(index.size()).isEqualTo((int) allPsm().count());
+
+        EObject source = null;
+        EReference reference = null;
+        for (EObject element : allPsm().map(e -> (EObject) e).collect(Collectors.toList())) {
+            Optional<EReference> found = element.eClass().getEAllReferences().stream()
+                    .filter(r -> !r.isContainment() && !r.isContainer() && !r.isDerived() && !r.isTransient() && !r.isMany()
+                            && element.eGet(r) instanceof EObject)
+                    .findFirst();
+            if (found.isPresent()) {
+                source = element;
+                reference = found.get();
+                break;
+            }
+        }
+        assertTrue(source != null);
+        EObject referenced = (EObject) source.eGet(reference);
+        assertThat(index.referencing(referenced)).contains(source);
+        assertThat(index.referencing(referenced, reference.getName())).contains(source);
+        assertThat(index.referencing(referenced, "noSuchReference")).isEmpty();
+
+        EObject contained = actorTypes.get(0);
+        assertThat(index.container(contained, "Model")).isSameAs(allPsm(hu.blackbelt.judo.meta.psm.namespace.Model.class).findFirst().get());
+    }
+
+    @Test
+    void testModelIndexPerGeneration() throws Exception {
+        testName = "NorthwindModelIndexPerGeneration";
+
+        psmModel = new Demo().fullDemo();
+
+        PsmGeneratorContext generatorContext = createGeneratorContext("index-project", "templates:\n"
+                + "  - name: index\n"
+                + "    pathExpression: \"'index'\"\n"
+                + "    template: \"{{{count}}}\"\n"
+                + "    templateContext:\n"
+                + "      - name: count\n"
+                + "        expression: \"#modelIndex.all('ActorType').size()\"\n"
+                + "        scope: RUN\n");
+        File testOutput = new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-index");
+        List<ActorType> actorTypes = allPsm(ActorType.class).collect(Collectors.toList());
+        assertThat(contents(PsmGenerator.execute(generatorParameter(generatorContext, null, testOutput))))
+                .containsEntry("index", String.valueOf(actorTypes.size()));
+
+        // The model is changed between the generations, the next generation indexes the new element
+        ActorType actorType = actorTypes.get(0);
+        ActorType copy = EcoreUtil.copy(actorType);
+        copy.setName(actorType.getName() + "Copy");
+        ((List<EObject>) actorType.eContainer().eGet(actorType.eContainmentFeature())).add(copy);
+
+        assertThat(contents(PsmGenerator.execute(generatorParameter(generatorContext, null, testOutput))))
+                .containsEntry("index", String.valueOf(actorTypes.size() + 1));
+        assertThat(generatorContext.getModelIndex().all(ActorType.class)).contains(copy);
+    }
+
+    @Test
+    void testGeneratorWatcher() throws Exception {
+        testName = "NorthwindGeneratorWatcher";
+
+        psmModel = new Demo().fullDemo();
+
+        File modelFile = new File(TARGET_TEST_CLASSES, "northwind-watcher-psm.model");
+        File templates = new File(TARGET_TEST_CLASSES, "watcher-templates");
+        File testOutput = new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-watcher");
+        psmModel.savePsmModel(psmSaveArgumentsBuilder().file(modelFile));
+        Path source = new File(TARGET_TEST_CLASSES, OVERRIDE_1).toPath();
+        try (Stream<Path> paths = Files.walk(source)) {
+            for (Path path : paths.collect(Collectors.toList())) {
+                Path target = templates.toPath().resolve(source.relativize(path).toString());
+                if (Files.isDirectory(path)) {
+                    Files.createDirectories(target);
+                } else {
+                    Files.copy(path, target, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+
+        LinkedHashMap<String, URI> uris = new LinkedHashMap<>();
+        uris.put(templates.toString(), templates.toURI());
+
+        BlockingQueue<Map.Entry<String, GeneratedFileWriter.Statistics>> generations = new LinkedBlockingQueue<>();
+        GeneratorWatcher watcher = GeneratorWatcher.generatorWatcher()
+                .contextArgument(contextArgument().psmModel(null).uris(uris).build())
+                .descriptorNames(Arrays.asList("test-project", "second-project"))
+                .modelFile(modelFile)
+                .modelName(TEST)
+                .parameterFactory((name, ctx) -> generatorParameter(ctx, null, testOutput)
+                        .writeIfChanged(true)
+                        .incrementalStateDirectory(new File(TARGET_TEST_CLASSES, "watcher-incremental/" + name)))
+                .generationCallback((name, statistics) -> generations.add(new AbstractMap.SimpleEntry<>(name, statistics)))
+                .build();
+
+        ExecutorService executorService = Executors.newSingleThreadExecutor();
+        try {
+            Future<?> running = executorService.submit(() -> {
+                watcher.run();
+                return null;
+            });
+            Map<String, GeneratedFileWriter.Statistics> generated = nextGeneration(generations, 2);
+            assertThat(generated).containsOnlyKeys("test-project", "second-project");
+            assertTrue(new File(testOutput, "InternalUser/actorname").isFile());
+            assertTrue(new File(testOutput, "InternalUser/second-actorname").isFile());
+
+            // Template change: the compiled templates are dropped
+            File template = new File(templates, "test1/actornameOverride1.hbs");
+            Files.write(template.toPath(), "\nWATCHED".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+            generated = nextGeneration(generations, 2);
+            assertTrue(generated.get("test-project").getWritten() > 0);
+            assertThat(linesOf(new File(testOutput, "InternalUser/actornameOverride1"))).contains("WATCHED");
+
+            // Descriptor change: the descriptors are loaded again
+            Files.write(new File(templates, "second-project.yaml").toPath(), ("templates:\n"
+                    + "  - name: actorname\n"
+                    + "    pathExpression: \"#actorType.name + '/second-changed'\"\n"
+                    + "    templateName: test1/actorname.hbs\n"
+                    + "    actorTypeBased: true\n").getBytes(StandardCharsets.UTF_8));
+            File changedDescriptorOutput = new File(testOutput, "InternalUser/second-changed");
+            awaitGeneration(generations, changedDescriptorOutput::isFile);
+
+            // Model change: the model is loaded again
+            ActorType actorType = allPsm(ActorType.class).filter(a -> "InternalUser".equals(a.getName())).findFirst().get();
+            actorType.setName("WatchedUser");
+            psmModel.savePsmModel(psmSaveArgumentsBuilder().file(modelFile));
+            File changedModelOutput = new File(testOutput, "WatchedUser/actorname");
+            awaitGeneration(generations, changedModelOutput::isFile);
+            assertTrue(new File(testOutput, "WatchedUser/second-changed").isFile());
+
+            watcher.close();
+            running.get(30, TimeUnit.SECONDS);
+        } finally {
+            watcher.close();
+            executorService.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the statistics of the next generation of the given number of descriptors by descriptor name.
+     */
+    static Map<String, GeneratedFileWriter.Statistics> nextGeneration(
+            BlockingQueue<Map.Entry<String, GeneratedFileWriter.Statistics>> generations, int descriptors) throws InterruptedException {
+        Map<String, GeneratedFileWriter.Statistics> generated = new HashMap<>();
+        for (int i = 0; i < descriptors; i++) {
+            Map.Entry<String, GeneratedFileWriter.Statistics> generation = generations.poll(30, TimeUnit.SECONDS);
+            assertTrue(generation != null);
+            generated.put(generation.getKey(), generation.getValue());
+        }
+        return generated;
+    }
+
+    /**
+     * Waits for the generations of the watcher until the condition is met. The changes of a file can be handled by
+     * more generations, so the generations are not counted.
+     */
+    static void awaitGeneration(BlockingQueue<?> generations, Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+        while (!condition.call()) {
+            long remaining = deadline - System.nanoTime();
+            assertTrue(remaining > 0 && generations.poll(remaining, TimeUnit.NANOSECONDS) != null);
+        }
+    }
+
+    @Test
+    void testIncrementalGenerationFollowsNavigation() throws Exception {
+        testName = "NorthwindIncremental";
+
+        psmModel = new Demo().fullDemo();
+
+        File stateDirectory = new File(TARGET_TEST_CLASSES, "northwind-incremental-state");
+        Navigation navigation = allPsm(ActorType.class)
+                .map(NorthwindTest::findNavigation)
+                .filter(Objects::nonNull)
+                .findFirst()
+                .orElseThrow(() -> new AssertionError("No actor type reaching an attribute through two references"));
+
+        // The same attribute is read by a template path, by a method call expression and inside a helper
+        String path = navigation.first.getName() + "." + navigation.second.getName() + "." + navigation.attribute.getName();
+        String methodCalls = "#self." + getter(navigation.first) + "()." + getter(navigation.second) + "()." + getter(navigation.attribute) + "()";
+        String descriptor = "templates:\n"
+                + "  - name: direct\n"
+                + "    pathExpression: \"'direct'\"\n"
+                + "    template: \"{{{self." + path + "}}}\"\n"
+                + "    actorTypeBased: true\n"
+                + "  - name: method\n"
+                + "    pathExpression: \"'method'\"\n"
+                + "    template: \"{{{value}}}\"\n"
+                + "    actorTypeBased: true\n"
+                + "    templateContext:\n"
+                + "      - name: value\n"
+                + "        expression: \"" + methodCalls + "\"\n"
+                + "  - name: helper\n"
+                + "    pathExpression: \"'helper'\"\n"
+                + "    template: \"{{{navigate self '" + path + "'}}}\"\n"
+                + "    actorTypeBased: true\n";
+        PsmGeneratorContext generatorContext = createGeneratorContext("incremental-project", descriptor);
+        Callable<Map<String, String>> generate = () -> contents(PsmGenerator.execute(
+                generatorParameter(generatorContext, null, new File(TARGET_TEST_CLASSES, NORTHWIND_TEST + "-incremental"))
+                        .actorTypePredicate(a -> a == navigation.source)
+                        .incrementalStateDirectory(stateDirectory)));
+
+        String original = String.valueOf(navigation.target.eGet(navigation.attribute));
+        assertThat(generate.call()).containsOnly(
+                entry("direct", original), entry("method", original), entry("helper", original));
+
+        String changed = original + "Changed";
+        navigation.target.eSet(navigation.attribute, changed);
+        assertThat(generate.call()).containsOnly(
+                entry("direct", changed), entry("method", changed), entry("helper", changed));
+    }
+
+    @Test
+    void testHelperFingerprintCoversDelegatedClasses() throws Exception {
+        testName = "NorthwindHelperFingerprint";
+
+        // The helper delegates to other classes of its code source, changing one of them changes the fingerprint
+        String original = IncrementalGenerationState.getClassFingerprint(TestHelper.class);
+        Path delegate = new File(TestContextAccessor.class.getProtectionDomain().getCodeSource().getLocation().toURI())
+                .toPath().resolve(TestContextAccessor.class.getName().replace('.', '/') + ".class");
+        FileTime lastModified = Files.getLastModifiedTime(delegate);
+        try {
+            Files.setLastModifiedTime(delegate, FileTime.fromMillis(lastModified.toMillis() + 10000));
+            assertThat(IncrementalGenerationState.getClassFingerprint(TestHelper.class)).isNotEqualTo(original);
+        } finally {
+            Files.setLastModifiedTime(delegate, lastModified);
+        }
+        assertThat(IncrementalGenerationState.getClassFingerprint(TestHelper.class)).isEqualTo(original);
+    }
+
+    /**
+     * Template URIs of the tests, the templates of override2 replace the templates of override1.
+     */
+    LinkedHashMap<String, URI> templateUris() {
+        LinkedHashMap<String, URI> uris = new LinkedHashMap<>();
+        uris.put(new File(TARGET_TEST_CLASSES, OVERRIDE_1).toString(), new File(TARGET_TEST_CLASSES, OVERRIDE_1).toURI());
+        uris.put(new File(TARGET_TEST_CLASSES, OVERRIDE_2).toString(), new File(TARGET_TEST_CLASSES, OVERRIDE_2).toURI());
+        return uris;
+    }
+
+    PsmGenerator.CreateGeneratorContextArgument.CreateGeneratorContextArgumentBuilder contextArgument() throws IOException {
+        return PsmGenerator.CreateGeneratorContextArgument.builder()
+                .psmModel(psmModel)
+                .descriptorName("test-project")
+                .uris(templateUris())
+                .helpers(TemplateHelperFinder.collectHelpersAsClass(this.getClass().getClassLoader()));
+    }
+
+    PsmGeneratorContext createGeneratorContext() throws IOException {
+        return PsmGenerator.createGeneratorContext(contextArgument().build());
+    }
+
+    /**
+     * Creates a context of the given descriptor content, the descriptor is written to a template directory of the test.
+     */
+    PsmGeneratorContext createGeneratorContext(String descriptorName, String descriptor) throws IOException {
+        File templates = new File(TARGET_TEST_CLASSES, descriptorName + "-templates");
+        Files.createDirectories(templates.toPath());
+        Files.write(new File(templates, descriptorName + ".yaml").toPath(), descriptor.getBytes(StandardCharsets.UTF_8));
+        LinkedHashMap<String, URI> uris = new LinkedHashMap<>();
+        uris.put(templates.toString(), templates.toURI());
+        return PsmGenerator.createGeneratorContext(contextArgument().descriptorName(descriptorName).uris(uris).build());
+    }
+
+    static Map<String, String> contents(PsmGeneratorResult result) {
+        return Stream.concat(result.getGenerated().stream(), result.getGeneratedByActors().values().stream().flatMap(Collection::stream))
+                .collect(Collectors.toMap(GeneratedFile::getPath, f -> new String(f.getContent(), StandardCharsets.UTF_8).trim(),
+                        (a, b) -> a, TreeMap::new));
+    }
+
+    static PsmGeneratorParameter.PsmGeneratorParameterBuilder generatorParameter(PsmGeneratorContext generatorContext, Log log, File testOutput) {
+        return PsmGeneratorParameter.psmGeneratorParameter()
+                .generatorContext(generatorContext)
+                .log(log)
+                .targetDirectoryResolver(() -> testOutput)
+                .actorTypeTargetDirectoryResolver(a -> testOutput)
+                .extraContextVariables(() -> ImmutableMap.of("extra", "extra"));
+    }
+
+    /**
+     * Path from an element through two single valued references to a string attribute of an other element.
+     */
+    static final class Navigation {
+        EObject source;
+        EReference first;
+        EReference second;
+        EObject target;
+        EAttribute attribute;
+    }
+
+    /**
+     * Finds a navigation from the given element, the references leading out of its containment tree are preferred,
+     * because the reads through them are not covered by the fingerprint of the element's own content.
+     */
+    static Navigation findNavigation(EObject source) {
+        Navigation found = null;
+        for (EReference first : singleReferences(source)) {
+            EObject intermediate = (EObject) source.eGet(first);
+            for (EReference second : singleReferences(intermediate)) {
+                EObject target = (EObject) intermediate.eGet(second);
+                Optional<EAttribute> attribute = target.eClass().getEAllAttributes().stream()
+                        .filter(a -> a.getEType().getInstanceClass() == String.class && a.isChangeable()
+                                && !a.isDerived() && !a.isTransient() && !a.isMany() && !a.isID() && target.eIsSet(a)
+                                && hasGetter(target, a))
+                        .min(Comparator.comparing(a -> "name".equals(a.getName())));
+                if (!attribute.isPresent() || target == source || !hasGetter(source, first) || !hasGetter(intermediate, second)) {
+                    continue;
+                }
+                Navigation navigation = new Navigation();
+                navigation.source = source;
+                navigation.first = first;
+                navigation.second = second;
+                navigation.target = target;
+                navigation.attribute = attribute.get();
+                if (!EcoreUtil.isAncestor(source, target) && !first.isContainment()) {
+                    return navigation;
+                } else if (found == null) {
+                    found = navigation;
+                }
+            }
+        }
+        return found;
+    }
+
+    static List<EReference> singleReferences(EObject element) {
+        return element.eClass().getEAllReferences().stream()
+                .filter(r -> !r.isMany() && !r.isContainer() && !r.isDerived() && !r.isTransient()
+                        && element.eGet(r) instanceof EObject && ((EObject) element.eGet(r)).eResource() != null)
+                .collect(Collectors.toList());
+    }
+
+    static String getter(EStructuralFeature feature) {
+        String name = feature.getName();
+        return "get" + Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    static boolean hasGetter(EObject element, EStructuralFeature feature) {
+        try {
+            element.getClass().getMethod(getter(feature));
+            return true;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    static List<String> uriFragments(PsmModel model) {
+        List<String> fragments = new ArrayList<>();
+        model.getResource().getAllContents().forEachRemaining(e -> fragments.add(model.getResource().getURIFragment(e)));
+        return fragments;
+    }
+
     static <T> Stream<T> asStream(Iterator<T> sourceIterator, boolean parallel) {
         Iterable<T> iterable = () -> sourceIterator;
         return StreamSupport.stream(iterable.spliterator(), parallel);
@@ -0,0 +1,37 @@
+package hu.blackbelt.judo.psm.generator.engine;
+
+import com.github.jknack.handlebars.Context;
+import org.springframework.expression.spel.support.StandardEvaluationContext;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Context accessor of the tests, it stores the bound context types and the last bound parameters.
+ */
+public class TestContextAccessor {
+
+    static final Set<Class> BOUND_TYPES = ConcurrentHashMap.newKeySet();
+
+    static final AtomicReference<Map<String, Object>> PARAMETERS = new AtomicReference<>();
+
+    public static void bindContext(Context context) {
+        BOUND_TYPES.add(Context.class);
+    }
+
+    public static void bindContext(StandardEvaluationContext context) {
+        BOUND_TYPES.add(StandardEvaluationContext.class);
+    }
+
+    public static void bindContext(Map<String, Object> parameters) {
+        BOUND_TYPES.add(Map.class);
+        PARAMETERS.set(parameters);
+    }
+
+    static void reset() {
+        BOUND_TYPES.clear();
+        PARAMETERS.set(null);
+    }
+}
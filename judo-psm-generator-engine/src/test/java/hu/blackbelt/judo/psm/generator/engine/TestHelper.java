@@ -7,6 +7,7 @@ import hu.blackbelt.judo.meta.psm.PsmUtils;
 import hu.blackbelt.judo.meta.psm.accesspoint.ActorType;
 import lombok.SneakyThrows;
 import lombok.extern.java.Log;
+import org.eclipse.emf.ecore.EObject;
 import org.springframework.expression.spel.support.StandardEvaluationContext;
 
 import java.util.List;
@@ -23,6 +24,22 @@ public class TestHelper extends StaticMethodValueResolver {
     }
 
 
+    /**
+     * Navigates the dot separated features from the given element, it is used to test that the elements navigated
+     * by helpers are followed by the incremental generation.
+     */
+    public static Object navigate(EObject element, String path) {
+        Object value = element;
+        for (String feature : path.split("\\.")) {
+            if (!(value instanceof EObject)) {
+                return null;
+            }
+            EObject current = (EObject) value;
+            value = current.eGet(current.eClass().getEStructuralFeature(feature));
+        }
+        return value;
+    }
+
     public static String plainName(String input) {
         return input == null ? "" : input
 //                .replaceAll("[^\\\\u(\\p{XDigit}{4})]", "_")
@@ -0,0 +1,29 @@
+package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.io.File;
+
+/**
+ * Generator descriptor (project type) with its destination directory, see the descriptors parameter of
+ * {@link GenerateProjectMojo}.
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+@AllArgsConstructor
+public class Descriptor {
+
+    /**
+     * Project type, the name of the descriptor yaml file is {@code <type>-project.yaml}.
+     */
+    private String type;
+
+    /**
+     * Destination directory of the generated files. When it is not set, the destination of the execution is used.
+     */
+    private File destination;
+}
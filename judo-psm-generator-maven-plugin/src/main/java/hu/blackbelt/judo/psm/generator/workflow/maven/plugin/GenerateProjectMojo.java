@@ -1,12 +1,22 @@
 package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
 
+import com.google.common.hash.Hashing;
 import com.google.common.io.Files;
+import hu.blackbelt.epsilon.runtime.execution.api.Log;
+import hu.blackbelt.epsilon.runtime.execution.impl.BufferedSlf4jLogger;
 import hu.blackbelt.judo.generator.commons.TemplateHelperFinder;
 import hu.blackbelt.judo.meta.psm.PsmUtils;
 import hu.blackbelt.judo.meta.psm.runtime.PsmModel;
 import hu.blackbelt.judo.meta.psm.support.PsmModelResourceSupport;
+import hu.blackbelt.judo.psm.generator.engine.GeneratedFileWriter;
+import hu.blackbelt.judo.psm.generator.engine.GenerationManifest;
+import hu.blackbelt.judo.psm.generator.engine.GenerationReport;
+import hu.blackbelt.judo.psm.generator.engine.GeneratorExecutor;
+import hu.blackbelt.judo.psm.generator.engine.PathTemplateLoader;
 import hu.blackbelt.judo.psm.generator.engine.PsmGenerator;
+import hu.blackbelt.judo.psm.generator.engine.PsmGeneratorContext;
 import hu.blackbelt.judo.psm.generator.engine.PsmGeneratorParameter;
+import hu.blackbelt.judo.psm.generator.engine.PsmModelCache;
 import lombok.AllArgsConstructor;
 import lombok.SneakyThrows;
 import org.apache.commons.compress.archivers.ArchiveEntry;
@@ -32,10 +42,18 @@ import org.eclipse.aether.repository.RemoteRepository;
 import org.eclipse.aether.resolution.ArtifactRequest;
 import org.eclipse.aether.resolution.ArtifactResolutionException;
 import org.eclipse.aether.resolution.ArtifactResult;
+import org.slf4j.LoggerFactory;
+import org.springframework.expression.spel.SpelCompilerMode;
 
 import java.io.*;
 import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardCopyOption;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Function;
 import java.util.stream.Collectors;
@@ -52,6 +70,8 @@ public class GenerateProjectMojo extends AbstractMojo {
 
     final int BUFFER_SIZE = 4096;
 
+    final int ARCHIVE_BUFFER_SIZE = 64 * 1024;
+
     @Parameter(defaultValue = "${project}", readonly = true, required = true)
     private MavenProject project;
 
@@ -68,9 +88,21 @@ public class GenerateProjectMojo extends AbstractMojo {
 
     private PluginDescriptor pluginDescriptor;
 
-    @Parameter(property = "type", required = true)
+    @Parameter(property = "type")
     private String type;
 
+    @Parameter(property = "descriptors")
+    private List<Descriptor> descriptors;
+
+    @Parameter(property = "modelCache", required = false, defaultValue = "false")
+    private Boolean modelCache;
+
+    @Parameter(property = "modelCacheDirectory", required = false, defaultValue = "${project.build.directory}/psm-generator-model-cache")
+    private File modelCacheDirectory;
+
+    @Parameter(property = "modelCacheMaxFiles", required = false, defaultValue = "5")
+    private int modelCacheMaxFiles;
+
     @Parameter(property = "psm")
     private String psm;
 
@@ -98,8 +130,70 @@ public class GenerateProjectMojo extends AbstractMojo {
     @Parameter(property="scanDependencies", required = false, readonly = true, defaultValue = "true")
     private Boolean scanDependencies;
 
+    @Parameter(property="executorMode", required = false, defaultValue = "PLATFORM")
+    private GeneratorExecutor.Mode executorMode;
+
+    @Parameter(property="parallelism", required = false, defaultValue = "0")
+    private int parallelism;
+
+    @Parameter(property="maxInFlight", required = false, defaultValue = "0")
+    private int maxInFlight;
+
+    @Parameter(property="streaming", required = false, defaultValue = "true")
+    private Boolean streaming;
+
+    @Parameter(property="writeIfChanged", required = false, defaultValue = "true")
+    private Boolean writeIfChanged;
+
+    @Parameter(property="manifestDirectory", required = false, defaultValue = "${project.build.directory}/psm-generator-manifest")
+    private File manifestDirectory;
+
+    @Parameter(property="incremental", required = false, defaultValue = "false")
+    private Boolean incremental;
+
+    @Parameter(property="incrementalStateDirectory", required = false, defaultValue = "${project.build.directory}/psm-generator-incremental")
+    private File incrementalStateDirectory;
+
+    @Parameter(property="expressionCompilerMode", required = false)
+    private SpelCompilerMode expressionCompilerMode;
+
+    @Parameter(property="printReport", required = false, defaultValue = "false")
+    private Boolean printReport;
+
+    @Parameter(property="reportTopTemplates", required = false, defaultValue = "10")
+    private int reportTopTemplates;
+
+    @Parameter(property="reportFile", required = false)
+    private File reportFile;
+
+    @Parameter(property="extractTemplates", required = false, defaultValue = "false")
+    private Boolean extractTemplates;
+
+    @Parameter(property="templateCache", required = false, defaultValue = "true")
+    private Boolean templateCache;
+
+    @Parameter(property="templateCacheDirectory", required = false)
+    private File templateCacheDirectory;
+
+    @Parameter(property="templateCacheMaxEntries", required = false, defaultValue = "3")
+    private int templateCacheMaxEntries;
+
+    @Parameter(property="helperScanCacheFile", required = false, defaultValue = "${project.build.directory}/psm-generator-helpers.json")
+    private File helperScanCacheFile;
+
+    @Parameter(property="upToDateCheck", required = false, defaultValue = "true")
+    private Boolean upToDateCheck;
+
+    @Parameter(property="inputFingerprintDirectory", required = false, defaultValue = "${project.build.directory}/psm-generator-inputs")
+    private File inputFingerprintDirectory;
+
+    @Parameter(property="upToDateIgnoredProperties", required = false)
+    private List<String> upToDateIgnoredProperties = new ArrayList<>(Arrays.asList("maven.build.timestamp"));
+
     Set<URL> classPathUrls = new HashSet<>();
 
+    private String classPathFingerprint;
+
     private void setContextClassLoader() throws DependencyResolutionRequiredException, MalformedURLException {
         // Project dependencies
         for (Object mavenCompilePath : project.getCompileClasspathElements()) {
@@ -188,12 +282,12 @@ public class GenerateProjectMojo extends AbstractMojo {
         ArchiveInputStream archiveInputStream = null;
         try {
             if (archive.getName().toLowerCase().endsWith(".tgz") || archive.getName().toLowerCase().endsWith(".tar.gz")) {
-                compressorInputStream = new GzipCompressorInputStream(new FileInputStream(archive));
+                compressorInputStream = new GzipCompressorInputStream(new BufferedInputStream(new FileInputStream(archive), ARCHIVE_BUFFER_SIZE));
                 archiveInputStream = new TarArchiveInputStream(compressorInputStream);
             } else if (archive.getName().toLowerCase().endsWith(".zip") || archive.getName().toLowerCase().endsWith(".jar")) {
-                archiveInputStream = new ZipArchiveInputStream(new FileInputStream(archive));
+                archiveInputStream = new ZipArchiveInputStream(new BufferedInputStream(new FileInputStream(archive), ARCHIVE_BUFFER_SIZE));
             } else if (archive.getName().toLowerCase().endsWith(".bz2") || archive.getName().toLowerCase().endsWith(".tar.bzip2")) {
-                compressorInputStream = new BZip2CompressorInputStream(new FileInputStream(archive));
+                compressorInputStream = new BZip2CompressorInputStream(new BufferedInputStream(new FileInputStream(archive), ARCHIVE_BUFFER_SIZE));
                 archiveInputStream = new TarArchiveInputStream(compressorInputStream);
             }
 
@@ -259,6 +353,27 @@ public class GenerateProjectMojo extends AbstractMojo {
         return outFile.get();
     }
 
+    /**
+     * Returns the URI of the templates of the given url. Without extractTemplates the jar and zip artifacts are not
+     * extracted, the directory of the archive is returned as jar: URI, which is read by {@link PathTemplateLoader}.
+     */
+    public URI getResolvedTemplateUri(String url) throws MojoExecutionException {
+        if (!extractTemplates && url.startsWith("mvn:")) {
+            String mvnUrl = url;
+            String subUrl = "";
+            if (mvnUrl.contains("!")) {
+                subUrl = mvnUrl.substring(mvnUrl.lastIndexOf("!") + 1);
+                mvnUrl = mvnUrl.substring(0, mvnUrl.lastIndexOf("!"));
+            }
+            File file = getArtifactResult(mvnUrl).getArtifact().getFile();
+            if (file != null && file.isFile() && (file.getName().toLowerCase().endsWith(".jar")
+                    || file.getName().toLowerCase().endsWith(".zip"))) {
+                return PathTemplateLoader.getArchiveUri(file.toPath(), subUrl);
+            }
+        }
+        return getResolvedTemplateDirectory(url).toURI();
+    }
+
     /**
      * Get the artifact file from the given url.
      *
@@ -291,7 +406,12 @@ public class GenerateProjectMojo extends AbstractMojo {
                     if (subUrl.startsWith("/")) {
                         subUrl = subUrl.substring(1);
                     }
-                    fileFromArchive = extractArchive(file, subUrl);
+                    if (templateCache) {
+                        fileFromArchive = getTemplateArchiveCache().getExtractedDirectory(
+                                resolutionResult.getArtifact(), file, subUrl, this::extractArchive);
+                    } else {
+                        fileFromArchive = extractArchive(file, subUrl);
+                    }
                 } catch (IOException e) {
                     throw new MojoExecutionException("Could not decompress: " + fileFromArchive.getAbsolutePath() + " file: " + fileFromArchive);
                 }
@@ -309,9 +429,23 @@ public class GenerateProjectMojo extends AbstractMojo {
         }
     }
 
+    private TemplateArchiveCache getTemplateArchiveCache() {
+        File directory = templateCacheDirectory;
+        if (directory == null) {
+            directory = new File(repoSession.getLocalRepository().getBasedir(), ".cache/judo-psm-generator/templates");
+        }
+        return new TemplateArchiveCache(directory, templateCacheMaxEntries, getLog());
+    }
+
     public File extractArchive(File archive, String path) throws IOException {
         File targetDir = Files.createTempDir();
+        extractArchive(archive, path, targetDir);
+        return targetDir;
+    }
+
+    public void extractArchive(File archive, String path, File targetDir) throws IOException {
         targetDir.mkdirs();
+        Set<File> directories = new HashSet<>();
         iterateArchive(archive, a -> {
             ArchiveEntry archiveEntry = a.archiveEntry;
             ArchiveInputStream archiveInputStream = a.archiveInputStream;
@@ -319,22 +453,304 @@ public class GenerateProjectMojo extends AbstractMojo {
             if (!archiveEntry.isDirectory() && archiveEntry.getName().startsWith(path)) {
                 String relPath = archiveEntry.getName().substring(path.length());
                 File outFile = new File(targetDir, relPath);
-                outFile.getParentFile().mkdirs();
-                int count;
-                byte data[] = new byte[BUFFER_SIZE];
-
-                try (FileOutputStream fos = new FileOutputStream(outFile, false);
-                     BufferedOutputStream dest = new BufferedOutputStream(fos, BUFFER_SIZE)) {
-                    while ((count = archiveInputStream.read(data, 0, BUFFER_SIZE)) != -1) {
-                        dest.write(data, 0, count);
-                    }
+                if (directories.add(outFile.getParentFile())) {
+                    outFile.getParentFile().mkdirs();
+                }
+                try {
+                    java.nio.file.Files.copy(archiveInputStream, outFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
                 } catch (IOException e) {
                     throw new RuntimeException("Could not extract: ", e);
                 }
             }
             return false;
         });
-        return targetDir;
+    }
+
+    private void generate(Descriptor descriptor, PsmGeneratorContext generatorContext, Map<String, Object> extras,
+                          String fingerprint, GeneratedFileWriter sharedWriter, int descriptorParallelism) throws Exception {
+        String prefix = getLogPrefix(descriptor);
+        GenerationReport report = new GenerationReport();
+        GeneratedFileWriter.Statistics statistics = PsmGenerator.generateToDirectory(
+                createGeneratorParameter(descriptor, generatorContext, extras)
+                        .parallelism(descriptorParallelism)
+                        .generationListener(report)
+                        .build(), sharedWriter);
+
+        getLog().info(prefix + "Generated files - " + statistics);
+        if (printReport) {
+            getLog().info(prefix + report.format(reportTopTemplates));
+        }
+        if (reportFile != null) {
+            File file = prefix.isEmpty() ? reportFile : new File(reportFile.getParentFile(), descriptor.getType() + "-" + reportFile.getName());
+            report.writeJson(file);
+            getLog().info(prefix + "Generation report written: " + file.getAbsolutePath());
+        }
+        if (fingerprint != null) {
+            InputFingerprint.save(getFingerprintFile(descriptor), fingerprint);
+        }
+    }
+
+    /**
+     * Creates the generation parameter of the descriptor from the parameters of the goal.
+     */
+    protected PsmGeneratorParameter.PsmGeneratorParameterBuilder createGeneratorParameter(Descriptor descriptor,
+                                                                                          PsmGeneratorContext generatorContext,
+                                                                                          Map<String, Object> extras) {
+        File target = descriptor.getDestination();
+        return PsmGeneratorParameter.psmGeneratorParameter()
+                .generatorContext(generatorContext)
+                .targetDirectoryResolver(() -> target)
+                .extraContextVariables(() -> extras)
+                .actorTypeTargetDirectoryResolver(a -> target)
+                .executorMode(executorMode)
+                .parallelism(parallelism)
+                .maxInFlight(maxInFlight)
+                .streaming(streaming)
+                .writeIfChanged(writeIfChanged)
+                .manifestDirectory(manifestDirectory)
+                .incrementalStateDirectory(incremental ? getIncrementalStateDirectory(descriptor) : null)
+                .actorTypePredicate(a -> actors == null || actors.isEmpty() || actors.contains(PsmUtils.namespaceToString(a.getNamespace()) + "::" + a.getName()));
+    }
+
+    protected File getIncrementalStateDirectory(Descriptor descriptor) {
+        return new File(incrementalStateDirectory, descriptor.getType());
+    }
+
+    protected String getLogPrefix(Descriptor descriptor) {
+        return descriptors != null && !descriptors.isEmpty() ? "[" + descriptor.getType() + "] " : "";
+    }
+
+    /**
+     * Returns the psm parameter: the model file or maven artifact URL.
+     */
+    protected String getPsm() {
+        return psm;
+    }
+
+    protected boolean isUpToDateCheck() {
+        return upToDateCheck;
+    }
+
+    /**
+     * Generates the descriptors with the resolved model, templates and helpers.
+     *
+     * @param fingerprints input fingerprints to store after the generation of the descriptors
+     */
+    protected void generate(PsmGenerator.CreateGeneratorContextArgument contextArgument, List<Descriptor> pendingDescriptors,
+                            Map<String, Object> extras, Map<Descriptor, String> fingerprints) throws Exception {
+        List<PsmGeneratorContext> generatorContexts = PsmGenerator.createGeneratorContexts(contextArgument,
+                pendingDescriptors.stream().map(Descriptor::getType).collect(Collectors.toList()));
+
+        if (pendingDescriptors.size() == 1) {
+            generate(pendingDescriptors.get(0), generatorContexts.get(0), extras, fingerprints.get(pendingDescriptors.get(0)),
+                    null, parallelism);
+        } else {
+            // The descriptors share the model, helpers and Handlebars, their generations run at the same time.
+            // They share the manifests of writeIfChanged too, so the descriptors of the same destination keep the files
+            // of each other in the manifest. The threads of parallelism are divided between the descriptors, so the
+            // generations together do not use more threads than one generation.
+            int descriptorParallelism = Math.max(1,
+                    (parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors()) / pendingDescriptors.size());
+            ExecutorService executorService = Executors.newFixedThreadPool(pendingDescriptors.size());
+            try (Log writerLog = new BufferedSlf4jLogger(LoggerFactory.getLogger(GenerateProjectMojo.class));
+                 GeneratedFileWriter sharedWriter = new GeneratedFileWriter(writeIfChanged, manifestDirectory, writerLog, null)) {
+                List<Future<Void>> futures = new ArrayList<>();
+                for (int i = 0; i < pendingDescriptors.size(); i++) {
+                    Descriptor descriptor = pendingDescriptors.get(i);
+                    PsmGeneratorContext generatorContext = generatorContexts.get(i);
+                    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+                    futures.add(executorService.submit(() -> {
+                        Thread.currentThread().setContextClassLoader(classLoader);
+                        generate(descriptor, generatorContext, extras, fingerprints.get(descriptor), sharedWriter,
+                                descriptorParallelism);
+                        return null;
+                    }));
+                }
+                for (Future<Void> future : futures) {
+                    try {
+                        future.get();
+                    } catch (ExecutionException e) {
+                        throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            } finally {
+                executorService.shutdownNow();
+            }
+        }
+    }
+
+    /**
+     * Returns the descriptors to generate: the descriptors parameter or the type and destination parameters when it
+     * is not set.
+     */
+    private List<Descriptor> getDescriptors() throws MojoExecutionException {
+        List<Descriptor> result = new ArrayList<>();
+        if (descriptors != null && !descriptors.isEmpty()) {
+            for (Descriptor descriptor : descriptors) {
+                if (descriptor.getType() == null || descriptor.getType().isBlank()) {
+                    throw new MojoExecutionException("The type of descriptor is mandatory");
+                }
+                result.add(new Descriptor(descriptor.getType(),
+                        descriptor.getDestination() != null ? descriptor.getDestination() : destination));
+            }
+        } else if (type != null && !type.isBlank()) {
+            result.add(new Descriptor(type, destination));
+        } else {
+            throw new MojoExecutionException("The type or descriptors parameter is mandatory");
+        }
+        return result;
+    }
+
+    /**
+     * Returns true when the files written by the previous generation of the descriptor exist and they are not modified
+     * since, checked by the manifest of writeIfChanged. Without writeIfChanged there is no manifest, so the generated
+     * files can not be checked.
+     */
+    private boolean isGeneratedFilesUnchanged(Descriptor descriptor) {
+        if (!writeIfChanged) {
+            getLog().debug("The generated files can not be checked without writeIfChanged, generation is not skipped");
+            return false;
+        }
+        return GenerationManifest.load(descriptor.getDestination(), manifestDirectory).isUpToDate();
+    }
+
+    private File getFingerprintFile(Descriptor descriptor) {
+        return new File(inputFingerprintDirectory, descriptor.getType() + "-" + Hashing.sha256()
+                .hashString(descriptor.getDestination().getAbsolutePath(), StandardCharsets.UTF_8).toString().substring(0, 16));
+    }
+
+    private Map<String, Object> getExtras() {
+        Map<String, Object> extras = project.getProperties().entrySet().stream().collect(
+                Collectors.toMap(
+                        e -> String.valueOf(e.getKey()),
+                        e -> e.getValue(),
+                        (prev, next) -> next, HashMap::new
+                ));
+
+        extras.putAll(repoSession.getConfigProperties());
+        if (templateParameters != null) {
+            extras.putAll(templateParameters);
+        }
+        return extras;
+    }
+
+    /**
+     * Calculates the fingerprint of everything the generation depends on: the plugin version, the parameters,
+     * the model file, the template artifacts and directories and the classpath. The model is not loaded and the
+     * archives are not extracted for it, an archive is added by its checksum and the path of the entry in the URL.
+     * The properties of upToDateIgnoredProperties are not added, they are changed on every build.
+     */
+    private String getInputFingerprint() throws MojoExecutionException {
+        try {
+            Map<String, Object> extras = getExtras();
+            extras.keySet().removeAll(upToDateIgnoredProperties);
+            InputFingerprint inputFingerprint = new InputFingerprint()
+                    .putString("plugin", pluginDescriptor != null ? pluginDescriptor.getId() : null)
+                    .putString("modelName", modelName)
+                    .putString("actors", actors)
+                    .putString("helpers", helpers)
+                    .putString("contextAccessor", contextAccessor)
+                    .putString("scanDependencies", scanDependencies)
+                    .putMap("extras", extras);
+            if (psm != null && !psm.trim().equals("")) {
+                putUrl(inputFingerprint.putString("psm", psm), "model", psm);
+            }
+            if (uris != null) {
+                for (String uri : uris) {
+                    putUrl(inputFingerprint.putString("uri", uri), uri.startsWith("mvn:") ? "artifact" : "directory", uri);
+                }
+            }
+            return inputFingerprint
+                    .putString("classpath", getClassPathFingerprint())
+                    .hash();
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not calculate input fingerprint", e);
+        }
+    }
+
+    /**
+     * Adds the file of the url to the fingerprint. The artifact of a maven url is added by its checksum,
+     * the path after the '!' is already in the url.
+     */
+    private void putUrl(InputFingerprint inputFingerprint, String name, String url) throws MojoExecutionException, IOException {
+        if (url.startsWith("mvn:")) {
+            String mvnUrl = url.contains("!") ? url.substring(0, url.lastIndexOf("!")) : url;
+            inputFingerprint.putFile(name, getArtifactResult(mvnUrl).getArtifact().getFile());
+        } else {
+            inputFingerprint.putFile(name, new File(url));
+        }
+    }
+
+    /**
+     * Returns the fingerprint of the classpath, it is calculated once per execution.
+     */
+    private String getClassPathFingerprint() throws IOException {
+        if (classPathFingerprint == null) {
+            classPathFingerprint = HelperScanCache.fingerprint(classPathUrls);
+        }
+        return classPathFingerprint;
+    }
+
+    /**
+     * Scans the classpath for helpers and context accessor. When the classpath is not changed since the last scan,
+     * the stored class names are used.
+     */
+    private void scanHelpers(Collection<Class> resolvedHelpers, AtomicReference<Class> contextAccessorClass) throws MojoExecutionException {
+        ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        boolean scanContextAccessor = contextAccessor == null || contextAccessor.isBlank();
+        HelperScanCache cache = helperScanCacheFile != null ? new HelperScanCache(helperScanCacheFile, getLog()) : null;
+        try {
+            String fingerprint = cache != null ? getClassPathFingerprint() : null;
+            Optional<HelperScanCache.Scan> cached = cache != null ? cache.load(fingerprint) : Optional.empty();
+            if (cached.isPresent() && (cached.get().contextAccessorScanned || !scanContextAccessor)) {
+                try {
+                    Collection<Class> helpers = HelperScanCache.loadClasses(cached.get().helpers, classLoader);
+                    Class accessor = scanContextAccessor && cached.get().contextAccessor != null
+                            ? classLoader.loadClass(cached.get().contextAccessor) : null;
+                    getLog().info("Classpath is not changed, using helpers of the previous scan");
+                    logHelpers(helpers);
+                    resolvedHelpers.addAll(helpers);
+                    if (accessor != null) {
+                        getLog().info("ContextAccessor class found: " + accessor.getName());
+                        contextAccessorClass.set(accessor);
+                    }
+                    return;
+                } catch (ClassNotFoundException e) {
+                    getLog().debug("Could not load class of the previous helper scan: " + e.getMessage());
+                }
+            }
+
+            getLog().info("Scanning classpath for helpers...");
+            HelperScanCache.Scan scan = new HelperScanCache.Scan();
+            scan.fingerprint = fingerprint;
+            Collection<Class> scannedHelpers = TemplateHelperFinder.collectHelpersAsClass(classLoader);
+            logHelpers(scannedHelpers);
+            resolvedHelpers.addAll(scannedHelpers);
+            scan.helpers = scannedHelpers.stream().map(Class::getName).sorted().collect(Collectors.toList());
+
+            if (scanContextAccessor) {
+                scan.contextAccessorScanned = true;
+                TemplateHelperFinder.findContextAccessorAsClass(classLoader).ifPresent(c -> {
+                    getLog().info("ContextAccessor class found: " + c.getName());
+                    contextAccessorClass.set(c);
+                    scan.contextAccessor = c.getName();
+                });
+            }
+            if (cache != null) {
+                cache.save(scan);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Could not scan dependencies", e);
+        }
+    }
+
+    private void logHelpers(Collection<Class> helpers) {
+        for (Class helper : helpers) {
+            getLog().info("Helper found: " + helper.getName());
+        }
+        if (helpers.size() == 0) {
+            getLog().warn("No class with @TemplateHelper found");
+        }
     }
 
     /**
@@ -367,22 +783,55 @@ public class GenerateProjectMojo extends AbstractMojo {
             throw new MojoExecutionException("Failed to set classloader", e);
         }
 
+        List<Descriptor> pendingDescriptors = new ArrayList<>();
+        Map<Descriptor, String> fingerprints = new HashMap<>();
+        String inputFingerprint = isUpToDateCheck() ? getInputFingerprint() : null;
+        for (Descriptor descriptor : getDescriptors()) {
+            if (inputFingerprint != null) {
+                String fingerprint = new InputFingerprint()
+                        .putString("inputs", inputFingerprint)
+                        .putString("type", descriptor.getType())
+                        .putString("destination", descriptor.getDestination().getAbsolutePath())
+                        .hash();
+                File fingerprintFile = getFingerprintFile(descriptor);
+                if (isGeneratedFilesUnchanged(descriptor) && InputFingerprint.isUpToDate(fingerprintFile, fingerprint, getLog())) {
+                    getLog().info("Generation inputs are not changed, generation is skipped: " + descriptor.getDestination().getAbsolutePath());
+                    continue;
+                }
+                try {
+                    InputFingerprint.invalidate(fingerprintFile);
+                } catch (IOException e) {
+                    throw new MojoExecutionException("Could not delete input fingerprint: " + fingerprintFile.getAbsolutePath(), e);
+                }
+                fingerprints.put(descriptor, fingerprint);
+            }
+            pendingDescriptors.add(descriptor);
+        }
+        if (pendingDescriptors.isEmpty()) {
+            return;
+        }
+
         URI psmUri = null;
         PsmModel psmModel = null;
         PsmModelResourceSupport psmModelResourceSupport = null;
 
         if (psm != null && !psm.trim().equals("")) {
-            psmUri = getArtifact(psm).toURI();
+            File psmFile = getArtifact(psm);
+            psmUri = psmFile.toURI();
 
             if (modelName == null || modelName.trim().equals("")) {
                 try {
-                    psmModel = PsmModel.loadPsmModel(psmLoadArgumentsBuilder()
-                            .inputStream(
-                                    of(psmUri).orElseThrow(() ->
-                                                    new IllegalArgumentException("psmModel or psmModelSourceUri have to be defined"))
-                                            .toURL().openStream())
-                            .validateModel(false)
-                            .name("forName"));
+                    if (modelCache) {
+                        psmModel = PsmModelCache.loadPsmModel(psmFile, modelCacheDirectory, "forName", modelCacheMaxFiles);
+                    } else {
+                        psmModel = PsmModel.loadPsmModel(psmLoadArgumentsBuilder()
+                                .inputStream(
+                                        of(psmUri).orElseThrow(() ->
+                                                        new IllegalArgumentException("psmModel or psmModelSourceUri have to be defined"))
+                                                .toURL().openStream())
+                                .validateModel(false)
+                                .name("forName"));
+                    }
 
                     psmModelResourceSupport = PsmModelResourceSupport.psmModelResourceSupportBuilder()
                             .resourceSet(psmModel.getResourceSet())
@@ -400,7 +849,7 @@ public class GenerateProjectMojo extends AbstractMojo {
             LinkedHashMap<String, URI> uriMap = new LinkedHashMap<>();
             if (uris != null) {
                 for (String uri : uris) {
-                    uriMap.put(uri, getResolvedTemplateDirectory(uri).toURI());
+                    uriMap.put(uri, getResolvedTemplateUri(uri));
                 }
             }
 
@@ -417,26 +866,7 @@ public class GenerateProjectMojo extends AbstractMojo {
             AtomicReference<Class> contextAccessorClass = new AtomicReference<>();
 
             if (scanDependencies) {
-                getLog().info("Scanning classpath for helpers...");
-                try {
-                    Collection<Class> scannedHelpers = TemplateHelperFinder.collectHelpersAsClass(Thread.currentThread().getContextClassLoader());
-                    for (Class helper : scannedHelpers) {
-                        getLog().info("Helper found: " + helper.getName());
-                    }
-                    if (scannedHelpers.size() == 0) {
-                        getLog().warn("No class with @TemplateHelper found");
-                    }
-                    resolvedHelpers.addAll(scannedHelpers);
-                } catch (IOException e) {
-                    throw new MojoExecutionException("Could not scan dependencies", e);
-                }
-
-                if (contextAccessor == null || contextAccessor.isBlank()) {
-                    TemplateHelperFinder.findContextAccessorAsClass(Thread.currentThread().getContextClassLoader()).ifPresent(c -> {
-                        getLog().info("ContextAccessor class found: " + c.getName());
-                        contextAccessorClass.set(c);
-                    });
-                }
+                scanHelpers(resolvedHelpers, contextAccessorClass);
             }
 
             if (contextAccessor != null && !"".equals(contextAccessor.trim())) {
@@ -447,29 +877,21 @@ public class GenerateProjectMojo extends AbstractMojo {
                 }
             }
 
-            Map<String, Object> extras = project.getProperties().entrySet().stream().collect(
-                    Collectors.toMap(
-                            e -> String.valueOf(e.getKey()),
-                            e -> e.getValue(),
-                            (prev, next) -> next, HashMap::new
-                    ));
-
-            extras.putAll(repoSession.getConfigProperties());
-            extras.putAll(templateParameters);
-
-            PsmGenerator.generateToDirectory(PsmGeneratorParameter.psmGeneratorParameter()
-                    .generatorContext(PsmGenerator.createGeneratorContext(
-                            PsmGenerator.CreateGeneratorContextArgument.builder()
-                                    .psmModel(psmModel)
-                                    .descriptorName(type)
-                                    .uris(uriMap)
-                                    .helpers(resolvedHelpers)
-                                    .contextAccessor(contextAccessorClass.get())
-                                .build()))
-                    .targetDirectoryResolver(() -> destination)
-                    .extraContextVariables(() -> extras)
-                    .actorTypeTargetDirectoryResolver(a -> destination)
-                    .actorTypePredicate(a -> actors == null || actors.isEmpty() || actors.contains(PsmUtils.namespaceToString(a.getNamespace()) + "::" + a.getName())));
+            Map<String, Object> extras = getExtras();
+
+            // The templates of archives are read from the archive, the loader closes the archives after the generation
+            try (PathTemplateLoader archiveTemplateLoader = PathTemplateLoader.hasArchive(uriMap.values())
+                    ? new PathTemplateLoader(uriMap.values()) : null) {
+                generate(PsmGenerator.CreateGeneratorContextArgument.builder()
+                        .psmModel(psmModel)
+                        .uris(uriMap)
+                        .helpers(resolvedHelpers)
+                        .contextAccessor(contextAccessorClass.get())
+                        .expressionCompilerMode(expressionCompilerMode)
+                        .urlTemplateLoaderFactory(archiveTemplateLoader != null ? u -> archiveTemplateLoader : null)
+                        .urlResolverFactory(archiveTemplateLoader != null ? u -> archiveTemplateLoader : null)
+                        .build(), pendingDescriptors, extras, fingerprints);
+            }
 
         } catch (URISyntaxException e) {
             throw new MojoExecutionException("Invalid URL: ", e);
@@ -0,0 +1,110 @@
+package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Stores the helper and context accessor class names found by the classpath scan with the fingerprint of the
+ * classpath. The fingerprint contains the path, size and modification time of every classpath element, for directories
+ * every class file in them, so the stored names are used only when none of them is changed.
+ */
+class HelperScanCache {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private final File cacheFile;
+
+    private final Log log;
+
+    HelperScanCache(File cacheFile, Log log) {
+        this.cacheFile = cacheFile;
+        this.log = log;
+    }
+
+    static String fingerprint(Collection<URL> classPathUrls) throws IOException {
+        Hasher hasher = Hashing.sha256().newHasher();
+        List<String> urls = classPathUrls.stream().map(URL::toString).sorted().collect(Collectors.toList());
+        for (String url : urls) {
+            hasher.putString(url, StandardCharsets.UTF_8);
+            File file;
+            try {
+                file = new File(new URL(url).toURI());
+            } catch (URISyntaxException | IllegalArgumentException e) {
+                continue;
+            }
+            if (file.isDirectory()) {
+                try (Stream<Path> paths = Files.walk(file.toPath())) {
+                    for (Path path : (Iterable<Path>) paths.filter(p -> p.toString().endsWith(".class") && Files.isRegularFile(p)).sorted()::iterator) {
+                        hasher.putString(file.toPath().relativize(path).toString(), StandardCharsets.UTF_8)
+                                .putLong(Files.size(path))
+                                .putLong(Files.getLastModifiedTime(path).toMillis());
+                    }
+                }
+            } else {
+                hasher.putLong(file.length()).putLong(file.lastModified());
+            }
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the stored scan result when it is created with the given fingerprint.
+     */
+    Optional<Scan> load(String fingerprint) {
+        if (!cacheFile.isFile()) {
+            return Optional.empty();
+        }
+        try {
+            Scan scan = MAPPER.readValue(cacheFile, Scan.class);
+            if (!fingerprint.equals(scan.fingerprint) || scan.helpers == null) {
+                log.debug("Classpath is changed since the last helper scan");
+                return Optional.empty();
+            }
+            return Optional.of(scan);
+        } catch (IOException e) {
+            log.warn("Could not read helper scan cache: " + cacheFile.getAbsolutePath(), e);
+            return Optional.empty();
+        }
+    }
+
+    void save(Scan scan) {
+        try {
+            cacheFile.getParentFile().mkdirs();
+            MAPPER.writeValue(cacheFile, scan);
+        } catch (IOException e) {
+            log.warn("Could not write helper scan cache: " + cacheFile.getAbsolutePath(), e);
+        }
+    }
+
+    static Collection<Class> loadClasses(Collection<String> classNames, ClassLoader classLoader) throws ClassNotFoundException {
+        Collection<Class> classes = new ArrayList<>();
+        for (String className : classNames) {
+            classes.add(classLoader.loadClass(className));
+        }
+        return classes;
+    }
+
+    static class Scan {
+        public String fingerprint;
+        public List<String> helpers;
+        /**
+         * True when the context accessor is scanned, the found class name is stored in contextAccessor.
+         */
+        public boolean contextAccessorScanned;
+        public String contextAccessor;
+    }
+}
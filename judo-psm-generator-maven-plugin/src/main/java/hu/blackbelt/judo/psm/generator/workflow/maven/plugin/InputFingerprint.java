@@ -0,0 +1,84 @@
+package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.stream.Stream;
+
+/**
+ * Fingerprint of the inputs of a generation: the model, the template artifacts and directories, the classpath and the
+ * parameters. It is stored in a file after a successful generation, when the fingerprint of the next execution is
+ * the same, the generation can be skipped. The stored fingerprint is deleted before the generation starts, so a
+ * failed or interrupted generation is never treated as up-to-date.
+ */
+class InputFingerprint {
+
+    private final Hasher hasher = Hashing.sha256().newHasher();
+
+    InputFingerprint putString(String name, Object value) {
+        hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0)
+                .putString(String.valueOf(value), StandardCharsets.UTF_8).putByte((byte) 0);
+        return this;
+    }
+
+    InputFingerprint putMap(String name, Map<String, ?> values) {
+        putString(name, values == null ? null : values.size());
+        if (values != null) {
+            new TreeMap<>(values).forEach((k, v) -> putString(k, v));
+        }
+        return this;
+    }
+
+    /**
+     * Adds the SHA-256 checksum of the file content, a directory is added by the relative path, size and modification
+     * time of its files. The location of the file is not added, so temporary files can be used.
+     */
+    InputFingerprint putFile(String name, File file) throws IOException {
+        hasher.putString(name, StandardCharsets.UTF_8).putByte((byte) 0);
+        if (file == null || !file.exists()) {
+            hasher.putBoolean(false);
+        } else if (file.isDirectory()) {
+            try (Stream<Path> paths = Files.walk(file.toPath())) {
+                for (Path path : (Iterable<Path>) paths.filter(Files::isRegularFile).sorted()::iterator) {
+                    hasher.putString(file.toPath().relativize(path).toString(), StandardCharsets.UTF_8)
+                            .putLong(Files.size(path))
+                            .putLong(Files.getLastModifiedTime(path).toMillis());
+                }
+            }
+        } else {
+            hasher.putString(TemplateArchiveCache.checksum(file), StandardCharsets.UTF_8);
+        }
+        return this;
+    }
+
+    String hash() {
+        return hasher.hash().toString();
+    }
+
+    static boolean isUpToDate(File fingerprintFile, String fingerprint, Log log) {
+        try {
+            return fingerprintFile.isFile()
+                    && fingerprint.equals(new String(Files.readAllBytes(fingerprintFile.toPath()), StandardCharsets.UTF_8).trim());
+        } catch (IOException e) {
+            log.warn("Could not read input fingerprint: " + fingerprintFile.getAbsolutePath(), e);
+            return false;
+        }
+    }
+
+    static void invalidate(File fingerprintFile) throws IOException {
+        Files.deleteIfExists(fingerprintFile.toPath());
+    }
+
+    static void save(File fingerprintFile, String fingerprint) throws IOException {
+        fingerprintFile.getParentFile().mkdirs();
+        Files.write(fingerprintFile.toPath(), fingerprint.getBytes(StandardCharsets.UTF_8));
+    }
+}
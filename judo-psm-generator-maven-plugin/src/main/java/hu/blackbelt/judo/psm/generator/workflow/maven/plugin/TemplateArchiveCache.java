@@ -0,0 +1,152 @@
+package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
+
+import com.google.common.hash.Hashing;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.aether.artifact.Artifact;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Cache of template directories extracted from archive artifacts. The directories are stored under
+ * {@code <cache directory>/<groupId>/<artifactId>/<version>/<path key>/<checksum key>}, where the path key is the hash
+ * of the classifier, the extension and the extracted path, the checksum key is the SHA-256 checksum of the archive, so
+ * an unchanged artifact is extracted once and reused by every execution and build. A changed artifact (for example a
+ * new snapshot) gets a new checksum key next to the entries of the earlier archives, the least recently used ones over
+ * the maximum number of entries are deleted.
+ * The directory is extracted into a temporary directory first and moved to its place when it is complete, so parallel
+ * builds never see a partially extracted directory. The {@value #COMPLETE_MARKER} marker file is created as the last
+ * file of the extraction, only the directories having it are used, and its modification time is the last use of the
+ * entry. On eviction the marker is deleted first.
+ */
+class TemplateArchiveCache {
+
+    static final String COMPLETE_MARKER = ".complete";
+
+    /**
+     * Checksums of archives and model files by path, size and modification time, so a file used by several executions
+     * of the same build is read once.
+     */
+    private static final Map<String, String> CHECKSUMS = new ConcurrentHashMap<>();
+
+    @FunctionalInterface
+    interface Extractor {
+        void extract(File archive, String path, File targetDirectory) throws IOException;
+    }
+
+    private final File cacheDirectory;
+
+    private final int maxEntries;
+
+    private final Log log;
+
+    TemplateArchiveCache(File cacheDirectory, int maxEntries, Log log) {
+        this.cacheDirectory = cacheDirectory;
+        this.maxEntries = maxEntries;
+        this.log = log;
+    }
+
+    File getExtractedDirectory(Artifact artifact, File archive, String path, Extractor extractor) throws IOException {
+        String key = checksum(archive).substring(0, 32);
+        Path entries = cacheDirectory.toPath()
+                .resolve(artifact.getGroupId())
+                .resolve(artifact.getArtifactId())
+                .resolve(artifact.getBaseVersion())
+                .resolve(Hashing.sha256().hashString(artifact.getClassifier() + "!" + artifact.getExtension() + "!" + path,
+                        StandardCharsets.UTF_8).toString().substring(0, 32));
+        Path directory = entries.resolve(key);
+        if (Files.isRegularFile(directory.resolve(COMPLETE_MARKER))) {
+            log.debug("Using cached templates of " + artifact + ": " + directory);
+            touch(directory.resolve(COMPLETE_MARKER));
+            return directory.toFile();
+        }
+
+        Files.createDirectories(entries);
+        Path temporary = Files.createTempDirectory(entries, key + ".");
+        try {
+            extractor.extract(archive, path, temporary.toFile());
+            Files.createFile(temporary.resolve(COMPLETE_MARKER));
+            Files.move(temporary, directory, StandardCopyOption.ATOMIC_MOVE);
+            log.info("Templates of " + artifact + " extracted to " + directory);
+        } catch (IOException | RuntimeException e) {
+            deleteRecursively(temporary);
+            if (!Files.isRegularFile(directory.resolve(COMPLETE_MARKER))) {
+                throw e;
+            }
+            // Extracted by a parallel execution in the meantime
+        }
+        try {
+            evict(entries, directory);
+        } catch (IOException e) {
+            log.warn("Could not delete old cached templates of " + artifact + ": " + entries, e);
+        }
+        return directory.toFile();
+    }
+
+    /**
+     * Deletes the least recently used entries of the same artifact and path over maxEntries, the given entry is kept.
+     */
+    private void evict(Path entries, Path directory) throws IOException {
+        List<Path> complete;
+        try (Stream<Path> paths = Files.list(entries)) {
+            complete = paths.filter(p -> !p.equals(directory) && Files.isRegularFile(p.resolve(COMPLETE_MARKER)))
+                    .collect(Collectors.toList());
+        }
+        if (complete.size() < maxEntries) {
+            return;
+        }
+        complete.sort(Comparator.comparingLong(TemplateArchiveCache::getLastUse).reversed());
+        for (Path entry : complete.subList(Math.max(0, maxEntries - 1), complete.size())) {
+            // Without the marker the entry is not used by other builds
+            Files.deleteIfExists(entry.resolve(COMPLETE_MARKER));
+            deleteRecursively(entry);
+            log.debug("Cached templates deleted: " + entry);
+        }
+    }
+
+    private void touch(Path marker) {
+        try {
+            Files.setLastModifiedTime(marker, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("Could not update the last use of cached templates: " + marker.getParent());
+        }
+    }
+
+    private static long getLastUse(Path entry) {
+        try {
+            return Files.getLastModifiedTime(entry.resolve(COMPLETE_MARKER)).toMillis();
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    static String checksum(File archive) throws IOException {
+        String fileKey = archive.getAbsolutePath() + "!" + archive.length() + "!" + archive.lastModified();
+        String checksum = CHECKSUMS.get(fileKey);
+        if (checksum == null) {
+            checksum = com.google.common.io.Files.asByteSource(archive).hash(Hashing.sha256()).toString();
+            CHECKSUMS.put(fileKey, checksum);
+        }
+        return checksum;
+    }
+
+    private static void deleteRecursively(Path path) throws IOException {
+        if (!Files.exists(path)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(path)) {
+            for (Path p : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(p);
+            }
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package hu.blackbelt.judo.psm.generator.workflow.maven.plugin;
+
+import hu.blackbelt.judo.psm.generator.engine.GeneratorWatcher;
+import hu.blackbelt.judo.psm.generator.engine.PsmGenerator;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.plugins.annotations.ResolutionScope;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Generates the project like the generate goal, then keeps the generator in memory and generates again when the
+ * model file or a file of the template directories is changed, until the build is stopped. Only local files are
+ * watched, the model and templates given as maven artifact are loaded once. The descriptors are watched together,
+ * a changed model is loaded once for all of them. The generation is incremental unless watchIncremental is false,
+ * writeIfChanged is taken from the configuration like in the generate goal.
+ */
+@Mojo(name = "watch",
+        requiresDependencyResolution = ResolutionScope.COMPILE)
+public class WatchProjectMojo extends GenerateProjectMojo {
+
+    @Parameter(property = "watchDebounce", required = false, defaultValue = "100")
+    private long watchDebounce;
+
+    @Parameter(property = "watchIncremental", required = false, defaultValue = "true")
+    private boolean watchIncremental;
+
+    @Override
+    protected boolean isUpToDateCheck() {
+        return false;
+    }
+
+    @Override
+    protected void generate(PsmGenerator.CreateGeneratorContextArgument contextArgument, List<Descriptor> pendingDescriptors,
+                            Map<String, Object> extras, Map<Descriptor, String> fingerprints) throws Exception {
+        File modelFile = null;
+        if (getPsm() != null && !getPsm().trim().equals("")) {
+            if (getPsm().startsWith("mvn:")) {
+                getLog().warn("Model is not a local file, it is not watched: " + getPsm());
+            } else {
+                modelFile = new File(getPsm());
+            }
+        }
+        List<File> watchedDirectories = contextArgument.getUris().entrySet().stream()
+                .filter(e -> !e.getKey().startsWith("mvn:"))
+                .map(e -> new File(e.getValue()))
+                .collect(Collectors.toList());
+
+        Map<String, Descriptor> descriptorsByName = new LinkedHashMap<>();
+        pendingDescriptors.forEach(d -> descriptorsByName.put(d.getType(), d));
+        getLog().info("Watching " + watchedDirectories.size() + " template directories"
+                + (modelFile != null ? " and " + modelFile.getAbsolutePath() : "") + ", stop the build to finish");
+
+        try (GeneratorWatcher watcher = GeneratorWatcher.generatorWatcher()
+                .contextArgument(contextArgument)
+                .descriptorNames(new ArrayList<>(descriptorsByName.keySet()))
+                .modelFile(modelFile)
+                .modelName("forName")
+                .watchedDirectories(watchedDirectories)
+                .debounceMillis(watchDebounce)
+                .parameterFactory((name, ctx) -> createGeneratorParameter(descriptorsByName.get(name), ctx, extras)
+                        .incrementalStateDirectory(watchIncremental ? getIncrementalStateDirectory(descriptorsByName.get(name)) : null))
+                .generationCallback((name, statistics) -> getLog().info(getLogPrefix(descriptorsByName.get(name))
+                        + "Generated files - " + statistics))
+                .build()) {
+            watcher.run();
+        }
+    }
+}